@@ -0,0 +1,60 @@
+package com.wetech.demo.web3j.config;
+
+import com.wetech.demo.web3j.rpc.RpcContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the deadline of an API request, which {@link RpcContext} then carries into every RPC
+ * call and receipt wait made on its behalf.
+ * <p>
+ * Clients may ask for a shorter or longer budget with the {@value #TIMEOUT_HEADER} header (capped
+ * at the configured maximum); otherwise reads and writes get their own defaults, since writes
+ * include waiting for the transaction receipt.
+ */
+@Slf4j
+public class RpcDeadlineInterceptor implements AsyncHandlerInterceptor {
+
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+
+    private final long readTimeoutMs;
+    private final long writeTimeoutMs;
+    private final long maxTimeoutMs;
+
+    public RpcDeadlineInterceptor(long readTimeoutMs, long writeTimeoutMs, long maxTimeoutMs) {
+        this.readTimeoutMs = readTimeoutMs;
+        this.writeTimeoutMs = writeTimeoutMs;
+        this.maxTimeoutMs = maxTimeoutMs;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        long timeoutMs = "GET".equals(request.getMethod()) ? readTimeoutMs : writeTimeoutMs;
+        String requested = request.getHeader(TIMEOUT_HEADER);
+        if (requested != null) {
+            try {
+                timeoutMs = Math.min(maxTimeoutMs, Math.max(1, Long.parseLong(requested.trim())));
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring invalid {} header: {}", TIMEOUT_HEADER, requested);
+            }
+        }
+        RpcContext.setDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        RpcContext.setDeadline(null);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        RpcContext.setDeadline(null);
+    }
+}
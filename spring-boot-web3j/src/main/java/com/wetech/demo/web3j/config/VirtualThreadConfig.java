@@ -0,0 +1,26 @@
+package com.wetech.demo.web3j.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Extras for {@code spring.threads.virtual.enabled=true}. Spring Boot itself moves Tomcat and its
+ * task executors onto virtual threads; {@link Web3jConfig} does the same for the RPC executors.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Value("${web3j.virtual-threads.pinning-threshold-ms:20}")
+    private long pinningThresholdMs;
+
+    @Bean
+    public VirtualThreadPinningMonitor virtualThreadPinningMonitor(MeterRegistry meterRegistry) {
+        return new VirtualThreadPinningMonitor(Duration.ofMillis(pinningThresholdMs), meterRegistry);
+    }
+}
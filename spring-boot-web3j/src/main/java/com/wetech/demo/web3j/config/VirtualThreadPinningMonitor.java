@@ -0,0 +1,84 @@
+package com.wetech.demo.web3j.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Reports virtual threads that block while pinned to their carrier (inside {@code synchronized}
+ * or native frames), using the JFR {@code jdk.VirtualThreadPinned} event. Every occurrence is
+ * counted; the stack is logged once per distinct pinning site.
+ */
+@Slf4j
+public class VirtualThreadPinningMonitor implements SmartLifecycle {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int MAX_FRAMES = 25;
+
+    private final Duration threshold;
+    private final Counter pinned;
+    private final Set<String> reportedSites = ConcurrentHashMap.newKeySet();
+    private RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(Duration threshold, MeterRegistry meterRegistry) {
+        this.threshold = threshold;
+        this.pinned = Counter.builder("jvm.threads.virtual.pinned")
+                .description("Virtual threads that blocked while pinned to their carrier thread")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public synchronized void start() {
+        stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::report);
+        stream.startAsync();
+        log.info("Reporting virtual thread pinning longer than {}ms", threshold.toMillis());
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return stream != null;
+    }
+
+    private void report(RecordedEvent event) {
+        pinned.increment();
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+            return;
+        }
+        String stack = stackTrace.getFrames().stream()
+                .limit(MAX_FRAMES)
+                .map(VirtualThreadPinningMonitor::format)
+                .collect(Collectors.joining("\n\tat "));
+        String site = format(stackTrace.getFrames().get(0));
+        if (reportedSites.add(site)) {
+            log.warn("Virtual thread pinned for {}ms at\n\tat {}", event.getDuration().toMillis(), stack);
+        } else {
+            log.debug("Virtual thread pinned for {}ms at {}", event.getDuration().toMillis(), site);
+        }
+    }
+
+    private static String format(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                + ":" + frame.getLineNumber();
+    }
+}
@@ -1,23 +1,93 @@
 package com.wetech.demo.web3j.config;
 
+import com.wetech.demo.web3j.rpc.AdaptiveConcurrencyLimiter;
+import com.wetech.demo.web3j.rpc.BatchingWeb3jService;
+import com.wetech.demo.web3j.rpc.CompressionInterceptor;
+import com.wetech.demo.web3j.rpc.HedgePolicy;
+import com.wetech.demo.web3j.rpc.HttpTransportMetrics;
+import com.wetech.demo.web3j.rpc.LogStreamReader;
+import com.wetech.demo.web3j.rpc.PooledHttpService;
+import com.wetech.demo.web3j.rpc.PrioritizedWeb3jService;
+import com.wetech.demo.web3j.rpc.PriorityScheduler;
+import com.wetech.demo.web3j.rpc.ReconnectingWebSocketService;
+import com.wetech.demo.web3j.rpc.RetryingWeb3jService;
+import com.wetech.demo.web3j.rpc.RoutingWeb3jService;
+import com.wetech.demo.web3j.rpc.RpcCalls;
+import com.wetech.demo.web3j.rpc.RpcEndpoint;
+import com.wetech.demo.web3j.rpc.RpcPoolEndpoint;
+import com.wetech.demo.web3j.rpc.RpcPriority;
+import com.wetech.demo.web3j.rpc.RpcWorkload;
+import com.wetech.demo.web3j.rpc.SingleFlightWeb3jService;
+import com.wetech.demo.web3j.rpc.UnixSocketIpcService;
+import com.wetech.demo.web3j.rpc.VirtualThreadBulkhead;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.web3j.crypto.Credentials;
 import org.web3j.protocol.Web3j;
-import org.web3j.protocol.http.HttpService;
+import org.web3j.protocol.Web3jService;
+import org.web3j.tx.ChainIdLong;
+import org.web3j.tx.RawTransactionManager;
+import org.web3j.tx.TransactionManager;
 import org.web3j.tx.gas.ContractGasProvider;
 import org.web3j.tx.gas.StaticGasProvider;
+import org.web3j.tx.response.NoOpProcessor;
+import org.web3j.tx.response.PollingTransactionReceiptProcessor;
+import org.web3j.tx.response.TransactionReceiptProcessor;
+import org.web3j.utils.Async;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
 import java.math.BigInteger;
+import java.net.URI;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Configuration
 public class Web3jConfig {
 
-    @Value("${web3j.client-address:http://localhost:8545}")
-    private String clientAddress;
+    @Value("${web3j.client-addresses:${web3j.client-address:http://localhost:8545}}")
+    private List<String> clientAddresses;
+
+    @Value("${web3j.transport:http}")
+    private String transport;
+
+    @Value("${web3j.ws.reconnect-min-ms:500}")
+    private long wsReconnectMinMs;
+
+    @Value("${web3j.ws.reconnect-max-ms:30000}")
+    private long wsReconnectMaxMs;
+
+    @Value("${web3j.ipc.max-connections:16}")
+    private int ipcMaxConnections;
 
     @Value("${web3j.private-key:0x8f2a55949038a9610f50fb23b5883af3b4ecb3c3bb792cbcefbd1542c692be63}")
     private String privateKey;
@@ -28,10 +98,338 @@ public class Web3jConfig {
     @Value("${web3j.gas-limit:6721975}")
     private String gasLimit;
 
+    @Value("${web3j.http.max-idle-connections:32}")
+    private int maxIdleConnections;
+
+    @Value("${web3j.http.keep-alive-ms:300000}")
+    private long keepAliveMs;
+
+    @Value("${web3j.http.max-requests:256}")
+    private int maxRequests;
+
+    @Value("${web3j.http.max-requests-per-host:64}")
+    private int maxRequestsPerHost;
+
+    @Value("${web3j.http.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    @Value("${web3j.http.read-timeout-ms:30000}")
+    private long readTimeoutMs;
+
+    @Value("${web3j.http.write-timeout-ms:10000}")
+    private long writeTimeoutMs;
+
+    @Value("${web3j.http.compression.enabled:false}")
+    private boolean compressionEnabled;
+
+    @Value("${web3j.http.compression.request-min-bytes:0}")
+    private long compressRequestMinBytes;
+
+    @Value("${web3j.http.prefer-http2:true}")
+    private boolean preferHttp2;
+
+    @Value("${web3j.http.tls-session-cache-size:256}")
+    private int tlsSessionCacheSize;
+
+    @Value("${web3j.http.tls-session-timeout-seconds:86400}")
+    private int tlsSessionTimeoutSeconds;
+
+    @Value("${web3j.http.warm-up-connections:4}")
+    private int warmUpConnections;
+
+    @Value("${web3j.pool.failure-threshold:3}")
+    private int poolFailureThreshold;
+
+    @Value("${web3j.pool.eject-ms:30000}")
+    private long poolEjectMs;
+
+    @Value("${web3j.pool.probe-interval-ms:5000}")
+    private long poolProbeIntervalMs;
+
+    @Value("${web3j.limiter.initial-limit:20}")
+    private int limiterInitialLimit;
+
+    @Value("${web3j.limiter.min-limit:2}")
+    private int limiterMinLimit;
+
+    @Value("${web3j.limiter.max-limit:200}")
+    private int limiterMaxLimit;
+
+    @Value("${web3j.limiter.max-wait-ms:250}")
+    private long limiterMaxWaitMs;
+
+    @Value("${web3j.hedge.enabled:true}")
+    private boolean hedgeEnabled;
+
+    @Value("${web3j.hedge.methods:eth_call,eth_getBalance,eth_getLogs,eth_getTransactionReceipt}")
+    private List<String> hedgeMethods;
+
+    @Value("${web3j.hedge.percentile:0.95}")
+    private double hedgePercentile;
+
+    @Value("${web3j.hedge.min-delay-ms:50}")
+    private long hedgeMinDelayMs;
+
+    @Value("${web3j.hedge.budget-percent:10}")
+    private double hedgeBudgetPercent;
+
+    @Value("${web3j.hedge.max-in-flight:16}")
+    private int hedgeMaxInFlight;
+
+    @Value("${web3j.retry.enabled:true}")
+    private boolean retryEnabled;
+
+    @Value("${web3j.retry.methods:eth_call,eth_getBalance,eth_blockNumber,eth_chainId,eth_getCode,eth_getStorageAt,eth_getLogs,eth_getTransactionReceipt,eth_getTransactionByHash,eth_getTransactionCount,eth_getBlockByNumber,eth_estimateGas,eth_gasPrice,net_version}")
+    private List<String> retryMethods;
+
+    @Value("${web3j.retry.max-attempts:3}")
+    private int retryMaxAttempts;
+
+    @Value("${web3j.retry.base-delay-ms:50}")
+    private long retryBaseDelayMs;
+
+    @Value("${web3j.retry.max-delay-ms:1000}")
+    private long retryMaxDelayMs;
+
+    @Value("${web3j.retry.budget-percent:10}")
+    private double retryBudgetPercent;
+
+    @Value("${web3j.executor.read.threads:32}")
+    private int readThreads;
+
+    @Value("${web3j.executor.read.queue:1000}")
+    private int readQueue;
+
+    @Value("${web3j.executor.submission.threads:8}")
+    private int submissionThreads;
+
+    @Value("${web3j.executor.submission.queue:200}")
+    private int submissionQueue;
+
+    @Value("${web3j.executor.receipt.threads:32}")
+    private int receiptThreads;
+
+    @Value("${web3j.executor.receipt.queue:500}")
+    private int receiptQueue;
+
+    @Value("${web3j.executor.events.threads:4}")
+    private int eventThreads;
+
+    @Value("${web3j.executor.events.queue:1000}")
+    private int eventQueue;
+
+    @Value("${web3j.executor.background.threads:4}")
+    private int backgroundThreads;
+
+    @Value("${web3j.executor.background.queue:1000}")
+    private int backgroundQueue;
+
+    @Value("${web3j.executor.bulk.threads:8}")
+    private int bulkThreads;
+
+    @Value("${web3j.executor.bulk.queue:100}")
+    private int bulkQueue;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${web3j.block-time-ms:2000}")
+    private long blockTimeMs;
+
+    @Value("${web3j.receipt.poll-interval-ms:1000}")
+    private long receiptPollIntervalMs;
+
+    @Value("${web3j.receipt.poll-attempts:120}")
+    private int receiptPollAttempts;
+
+    @Value("${web3j.batch.enabled:true}")
+    private boolean batchEnabled;
+
+    @Value("${web3j.batch.window-ms:2}")
+    private long batchWindowMs;
+
+    @Value("${web3j.batch.max-size:50}")
+    private int batchMaxSize;
+
+    @Value("${web3j.batch.methods:eth_call,eth_blockNumber,eth_getTransactionReceipt}")
+    private List<String> batchMethods;
+
+    @Value("${web3j.batch.flush-threads:16}")
+    private int batchFlushThreads;
+
+    @Value("${web3j.priority.max-concurrency:64}")
+    private int priorityMaxConcurrency;
+
+    @Value("${web3j.priority.share.transaction:5}")
+    private int transactionShare;
+
+    @Value("${web3j.priority.share.interactive:4}")
+    private int interactiveShare;
+
+    @Value("${web3j.priority.share.background:1}")
+    private int backgroundShare;
+
+    @Value("${web3j.priority.starvation-ms:1000}")
+    private long priorityStarvationMs;
+
+    @Value("${web3j.single-flight.enabled:true}")
+    private boolean singleFlightEnabled;
+
+    @Value("${web3j.single-flight.methods:eth_call,eth_getBalance,eth_blockNumber,eth_chainId,eth_getCode,eth_getTransactionReceipt}")
+    private List<String> singleFlightMethods;
+
+    @Bean
+    public OkHttpClient okHttpClient(MeterRegistry meterRegistry) throws GeneralSecurityException {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
+        X509TrustManager trustManager = defaultTrustManager();
+        // A dedicated context keeps its own session cache, so reconnects resume TLS sessions
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[]{trustManager}, null);
+        SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        sessionContext.setSessionCacheSize(tlsSessionCacheSize);
+        sessionContext.setSessionTimeout(tlsSessionTimeoutSeconds);
+
+        List<Protocol> protocols = preferHttp2
+                ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                : List.of(Protocol.HTTP_1_1);
+
+        log.info("RPC transport: pool={} keepAlive={}ms maxPerHost={} protocols={} compression={}",
+                maxIdleConnections, keepAliveMs, maxRequestsPerHost, protocols, compressionEnabled);
+        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+        if (compressionEnabled) {
+            builder.addInterceptor(new CompressionInterceptor(compressRequestMinBytes, meterRegistry));
+        }
+        return builder
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMs, TimeUnit.MILLISECONDS))
+                .protocols(protocols)
+                .sslSocketFactory(sslContext.getSocketFactory(), trustManager)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .readTimeout(Duration.ofMillis(readTimeoutMs))
+                .writeTimeout(Duration.ofMillis(writeTimeoutMs))
+                .build();
+    }
+
+    @Bean
+    public RoutingWeb3jService rpcRouter(OkHttpClient okHttpClient) {
+        List<RpcEndpoint> endpoints = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (String address : clientAddresses) {
+            String name = endpointName(address);
+            if (!names.add(name)) {
+                name = name + "#" + (endpoints.size() + 1);
+            }
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(name, limiterInitialLimit,
+                    limiterMinLimit, limiterMaxLimit, Duration.ofMillis(limiterMaxWaitMs));
+            endpoints.add(new RpcEndpoint(name, newTransport(address.trim(), okHttpClient), limiter));
+        }
+        HedgePolicy hedgePolicy = hedgeEnabled
+                ? new HedgePolicy(new HashSet<>(hedgeMethods), hedgePercentile,
+                        Duration.ofMillis(hedgeMinDelayMs), hedgeBudgetPercent, hedgeMaxInFlight)
+                : null;
+        return new RoutingWeb3jService(endpoints, poolFailureThreshold,
+                Duration.ofMillis(poolEjectMs), Duration.ofMillis(poolProbeIntervalMs), hedgePolicy);
+    }
+
+    @Bean
+    public RpcPoolEndpoint rpcPoolEndpoint(RoutingWeb3jService rpcRouter) {
+        return new RpcPoolEndpoint(rpcRouter);
+    }
+
+    @Bean
+    public PriorityScheduler priorityScheduler() {
+        Map<RpcPriority, Integer> shares = Map.of(
+                RpcPriority.TRANSACTION, transactionShare,
+                RpcPriority.INTERACTIVE, interactiveShare,
+                RpcPriority.BACKGROUND, backgroundShare);
+        log.info("RPC priority lanes: shares={} maxConcurrency={}", shares, priorityMaxConcurrency);
+        return new PriorityScheduler(priorityMaxConcurrency, shares, Duration.ofMillis(priorityStarvationMs));
+    }
+
     @Bean
-    public Web3j web3j() {
-        log.info("Connecting to Ethereum client: {}", clientAddress);
-        return Web3j.build(new HttpService(clientAddress));
+    public Web3j web3j(RoutingWeb3jService rpcRouter, PriorityScheduler priorityScheduler, MeterRegistry meterRegistry) {
+        log.info("Connecting to Ethereum clients: {}", rpcRouter.getEndpoints());
+        Web3jService service = rpcRouter;
+        if (retryEnabled) {
+            service = new RetryingWeb3jService(service, new HashSet<>(retryMethods), retryMaxAttempts,
+                    Duration.ofMillis(retryBaseDelayMs), Duration.ofMillis(retryMaxDelayMs), retryBudgetPercent,
+                    meterRegistry);
+        }
+        if (batchEnabled) {
+            log.info("Coalescing {} into batches of up to {} within {}ms", batchMethods, batchMaxSize, batchWindowMs);
+            service = new BatchingWeb3jService(service, new HashSet<>(batchMethods),
+                    Duration.ofMillis(batchWindowMs), batchMaxSize, batchFlushThreads, meterRegistry);
+        }
+        service = new PrioritizedWeb3jService(service, priorityScheduler);
+        if (singleFlightEnabled) {
+            // Outermost, so collapsed calls never take a batch slot; keyed by lane, so no priority inversion
+            service = new SingleFlightWeb3jService(service, new HashSet<>(singleFlightMethods), meterRegistry);
+        }
+        // Filters and the head tracker poll at half a block, not web3j's default 15s, so the tracked head keeps up
+        long pollingIntervalMs = blockTimeMs > 0 ? Math.max(250, blockTimeMs / 2) : 1000;
+        return Web3j.build(service, pollingIntervalMs, Async.defaultExecutorService());
+    }
+
+    @Bean
+    public TransactionManager transactionManager(Web3j web3j, Credentials credentials) {
+        // Submission only; RpcCalls waits for receipts on its own executor
+        return new RawTransactionManager(web3j, credentials, ChainIdLong.NONE, new NoOpProcessor(web3j));
+    }
+
+    @Bean
+    public TransactionReceiptProcessor transactionReceiptProcessor(Web3j web3j) {
+        return new PollingTransactionReceiptProcessor(web3j, receiptPollIntervalMs, receiptPollAttempts);
+    }
+
+    @Bean
+    public RpcCalls rpcCalls(TransactionReceiptProcessor transactionReceiptProcessor, MeterRegistry meterRegistry) {
+        Map<RpcWorkload, ExecutorService> executors = new EnumMap<>(RpcWorkload.class);
+        executors.put(RpcWorkload.READ, boundedExecutor(RpcWorkload.READ, readThreads, readQueue, meterRegistry));
+        executors.put(RpcWorkload.SUBMISSION,
+                boundedExecutor(RpcWorkload.SUBMISSION, submissionThreads, submissionQueue, meterRegistry));
+        executors.put(RpcWorkload.RECEIPT,
+                boundedExecutor(RpcWorkload.RECEIPT, receiptThreads, receiptQueue, meterRegistry));
+        executors.put(RpcWorkload.EVENTS, boundedExecutor(RpcWorkload.EVENTS, eventThreads, eventQueue, meterRegistry));
+        executors.put(RpcWorkload.BACKGROUND,
+                boundedExecutor(RpcWorkload.BACKGROUND, backgroundThreads, backgroundQueue, meterRegistry));
+        executors.put(RpcWorkload.BULK, boundedExecutor(RpcWorkload.BULK, bulkThreads, bulkQueue, meterRegistry));
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rpc-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (virtualThreads) {
+            log.info("RPC executors run on virtual threads");
+        }
+        return new RpcCalls(executors, timer, transactionReceiptProcessor);
+    }
+
+    @Bean
+    public LogStreamReader logStreamReader(RoutingWeb3jService rpcRouter, PriorityScheduler priorityScheduler) {
+        return new LogStreamReader(rpcRouter, priorityScheduler);
+    }
+
+    @Bean
+    public HttpTransportMetrics httpTransportMetrics(OkHttpClient okHttpClient) {
+        return new HttpTransportMetrics(okHttpClient);
+    }
+
+    @Bean
+    public ApplicationRunner httpWarmUp(RoutingWeb3jService rpcRouter) {
+        return args -> {
+            if (warmUpConnections <= 0) {
+                return;
+            }
+            for (RpcEndpoint endpoint : rpcRouter.getEndpoints()) {
+                if (endpoint.getTransport() instanceof PooledHttpService httpService) {
+                    int opened = httpService.warmUp(warmUpConnections, Duration.ofMillis(connectTimeoutMs));
+                    log.info("Pre-warmed {}/{} connections to {}", opened, warmUpConnections, endpoint);
+                }
+            }
+        };
     }
 
     @Bean
@@ -46,4 +444,70 @@ public class Web3jConfig {
                 new BigInteger(gasLimit)
         );
     }
-}
\ No newline at end of file
+
+    private Web3jService newTransport(String address, OkHttpClient okHttpClient) {
+        return switch (transport.toLowerCase()) {
+            case "http" -> new PooledHttpService(address, okHttpClient);
+            case "ws" -> {
+                ReconnectingWebSocketService webSocket = new ReconnectingWebSocketService(address,
+                        Duration.ofMillis(wsReconnectMinMs), Duration.ofMillis(wsReconnectMaxMs));
+                webSocket.connect();
+                yield webSocket;
+            }
+            case "ipc" -> new UnixSocketIpcService(address, ipcMaxConnections);
+            default -> throw new IllegalArgumentException("Unsupported web3j.transport: " + transport);
+        };
+    }
+
+    /**
+     * Fixed-size pool with a bounded queue; overflow is rejected and reported as overload.
+     * Exposed as executor.* metrics tagged {@code name=rpc.<workload>}.
+     * <p>
+     * With virtual threads enabled the pool becomes a {@link VirtualThreadBulkhead} with the same
+     * limits: {@code threads} tasks run at once and {@code queueCapacity} more wait, but a task
+     * blocked on the network no longer holds a platform thread.
+     */
+    private ExecutorService boundedExecutor(RpcWorkload workload, int threads, int queueCapacity,
+                                            MeterRegistry meterRegistry) {
+        String name = "rpc-" + workload.name().toLowerCase();
+        if (virtualThreads) {
+            VirtualThreadBulkhead bulkhead = new VirtualThreadBulkhead(name, threads, queueCapacity);
+            bulkhead.bindTo(meterRegistry);
+            return bulkhead;
+        }
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        new ExecutorServiceMetrics(executor, name.replace('-', '.'), List.of()).bindTo(meterRegistry);
+        return executor;
+    }
+
+    /**
+     * Metric/actuator name for an endpoint: the host only, so API keys embedded in the URL path
+     * or query never leak into monitoring. IPC endpoints are socket paths, named by file name.
+     */
+    private String endpointName(String address) {
+        String trimmed = address.trim();
+        if ("ipc".equalsIgnoreCase(transport)) {
+            Path fileName = Path.of(trimmed).getFileName();
+            return fileName != null ? fileName.toString() : trimmed;
+        }
+        String host = URI.create(trimmed).getHost();
+        return host != null ? host : trimmed;
+    }
+
+    private static X509TrustManager defaultTrustManager() throws GeneralSecurityException {
+        TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        factory.init((KeyStore) null);
+        return Arrays.stream(factory.getTrustManagers())
+                .filter(X509TrustManager.class::isInstance)
+                .map(X509TrustManager.class::cast)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No X509TrustManager available"));
+    }
+}
@@ -0,0 +1,27 @@
+package com.wetech.demo.web3j.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    @Value("${web3j.deadline.read-ms:5000}")
+    private long readDeadlineMs;
+
+    @Value("${web3j.deadline.write-ms:60000}")
+    private long writeDeadlineMs;
+
+    @Value("${web3j.deadline.max-ms:120000}")
+    private long maxDeadlineMs;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new RpcDeadlineInterceptor(readDeadlineMs, writeDeadlineMs, maxDeadlineMs))
+                .addPathPatterns("/api/**")
+                // Bulk reads run as long as the input keeps coming
+                .excludePathPatterns("/api/erc20/balances");
+    }
+}
@@ -1,11 +1,27 @@
 package com.wetech.demo.web3j.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wetech.demo.web3j.rpc.RpcDeadlineExceededException;
+import com.wetech.demo.web3j.rpc.RpcOverloadedException;
+import com.wetech.demo.web3j.service.BlockValue;
+import com.wetech.demo.web3j.service.BulkBalanceReader;
 import com.wetech.demo.web3j.service.ERC20Service;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Map;
@@ -18,6 +34,8 @@ import java.util.concurrent.CompletableFuture;
 public class ERC20Controller {
 
     private final ERC20Service erc20Service;
+    private final BulkBalanceReader bulkBalanceReader;
+    private final ObjectMapper objectMapper;
 
 
 
@@ -45,11 +63,7 @@ public class ERC20Controller {
                     response.put("message", "Contract deployed successfully");
                     return ResponseEntity.ok(response);
                 })
-                .exceptionally(throwable -> {
-                    Map<String, String> response = new HashMap<>();
-                    response.put("error", "Deployment failed: " + throwable.getMessage());
-                    return ResponseEntity.badRequest().body(response);
-                });
+                .exceptionally(throwable -> failure("Deployment failed: ", throwable));
     }
 
     /**
@@ -86,11 +100,7 @@ public class ERC20Controller {
                     response.put("message", "Mint completed successfully");
                     return ResponseEntity.ok(response);
                 })
-                .exceptionally(throwable -> {
-                    Map<String, String> response = new HashMap<>();
-                    response.put("error", "Mint failed: " + throwable.getMessage());
-                    return ResponseEntity.badRequest().body(response);
-                });
+                .exceptionally(throwable -> failure("Mint failed: ", throwable));
     }
 
     /**
@@ -110,31 +120,52 @@ public class ERC20Controller {
                     response.put("message", "Transfer completed successfully");
                     return ResponseEntity.ok(response);
                 })
-                .exceptionally(throwable -> {
-                    Map<String, String> response = new HashMap<>();
-                    response.put("error", "Transfer failed: " + throwable.getMessage());
-                    return ResponseEntity.badRequest().body(response);
-                });
+                .exceptionally(throwable -> failure("Transfer failed: ", throwable));
     }
 
     /**
-     * 查询余额
+     * 查询余额；maxStaleBlocks（参数或 X-Max-Stale-Blocks 请求头）允许直接返回落后不超过该区块数的缓存值，
+     * 同时在后台刷新，blockNumber 为数值所在的区块；includePending=true 时叠加本服务刚确认、
+     * 但该区块尚未包含的 transfer/mint 结果，调用方无需轮询
      */
     @GetMapping("/balanceOf")
-    public CompletableFuture<ResponseEntity<Map<String, String>>> balanceOf(@RequestParam String account) {
-        return erc20Service.balanceOf(account)
+    public CompletableFuture<ResponseEntity<Map<String, String>>> balanceOf(
+            @RequestParam String account,
+            @RequestParam(required = false) Long maxStaleBlocks,
+            @RequestHeader(name = StaleReads.HEADER, required = false) Long maxStaleHeader,
+            @RequestParam(defaultValue = "false") boolean includePending) {
+        return erc20Service.balanceOf(account, StaleReads.maxStaleBlocks(maxStaleBlocks, maxStaleHeader),
+                        includePending)
                 .thenApply(balance -> {
                     Map<String, String> response = new HashMap<>();
                     response.put("account", account);
-                    response.put("balance", balance.toString());
+                    response.put("balance", balance.value().toString());
+                    StaleReads.putBlock(response, balance);
+                    if (includePending) {
+                        response.put("includePending", "true");
+                    }
                     response.put("message", "Balance query successful");
                     return ResponseEntity.ok(response);
                 })
-                .exceptionally(throwable -> {
-                    Map<String, String> response = new HashMap<>();
-                    response.put("error", "Balance query failed: " + throwable.getMessage());
-                    return ResponseEntity.badRequest().body(response);
-                });
+                .exceptionally(throwable -> failure("Balance query failed: ", throwable));
+    }
+
+    /**
+     * 批量查询余额：请求体为地址的 JSON 数组或 NDJSON，结果以 NDJSON 流式返回，
+     * 所有余额读取自同一区块（见 X-Block-Number 响应头）
+     */
+    @PostMapping(value = "/balances", produces = "application/x-ndjson")
+    public void balances(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!erc20Service.isContractLoaded()) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Contract not loaded");
+            return;
+        }
+        BigInteger block = bulkBalanceReader.headBlock();
+        response.setContentType("application/x-ndjson");
+        response.setHeader("X-Block-Number", block.toString());
+        long count = bulkBalanceReader.stream(erc20Service.getContractAddress(), block,
+                request.getInputStream(), response.getOutputStream());
+        log.info("Streamed {} balances at block {}", count, block);
     }
 
     /**
@@ -154,11 +185,7 @@ public class ERC20Controller {
                     response.put("message", "Approve completed successfully");
                     return ResponseEntity.ok(response);
                 })
-                .exceptionally(throwable -> {
-                    Map<String, String> response = new HashMap<>();
-                    response.put("error", "Approve failed: " + throwable.getMessage());
-                    return ResponseEntity.badRequest().body(response);
-                });
+                .exceptionally(throwable -> failure("Approve failed: ", throwable));
     }
 
     /**
@@ -180,6 +207,10 @@ public class ERC20Controller {
                     return ResponseEntity.ok(response);
                 })
                 .exceptionally(throwable -> {
+                    if (RpcOverloadedException.causedBy(throwable)
+                            || RpcDeadlineExceededException.causedBy(throwable)) {
+                        return failure("TransferFrom failed: ", throwable);
+                    }
                     Map<String, String> response = new HashMap<>();
 
                     // 提供更友好的错误消息
@@ -221,26 +252,25 @@ public class ERC20Controller {
 
 
     /**
-     * 查询授权额度
+     * 查询授权额度；maxStaleBlocks 含义同 balanceOf
      */
     @GetMapping("/allowance")
     public CompletableFuture<ResponseEntity<Map<String, String>>> allowance(
             @RequestParam String owner,
-            @RequestParam String spender) {
-        return erc20Service.allowance(owner, spender)
+            @RequestParam String spender,
+            @RequestParam(required = false) Long maxStaleBlocks,
+            @RequestHeader(name = StaleReads.HEADER, required = false) Long maxStaleHeader) {
+        return erc20Service.allowance(owner, spender, StaleReads.maxStaleBlocks(maxStaleBlocks, maxStaleHeader))
                 .thenApply(allowance -> {
                     Map<String, String> response = new HashMap<>();
                     response.put("owner", owner);
                     response.put("spender", spender);
-                    response.put("allowance", allowance.toString());
+                    response.put("allowance", allowance.value().toString());
+                    StaleReads.putBlock(response, allowance);
                     response.put("message", "Allowance query successful");
                     return ResponseEntity.ok(response);
                 })
-                .exceptionally(throwable -> {
-                    Map<String, String> response = new HashMap<>();
-                    response.put("error", "Allowance query failed: " + throwable.getMessage());
-                    return ResponseEntity.badRequest().body(response);
-                });
+                .exceptionally(throwable -> failure("Allowance query failed: ", throwable));
     }
 
     /**
@@ -254,29 +284,114 @@ public class ERC20Controller {
             return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(response));
         }
 
-        CompletableFuture<String> nameFuture = erc20Service.name();
-        CompletableFuture<String> symbolFuture = erc20Service.symbol();
-        CompletableFuture<BigInteger> decimalsFuture = erc20Service.decimals();
-        CompletableFuture<BigInteger> totalSupplyFuture = erc20Service.totalSupply();
-
-        return CompletableFuture.allOf(nameFuture, symbolFuture, decimalsFuture, totalSupplyFuture)
-                .thenApply(v -> {
+        // 四个值在同一区块上读取，彼此一致
+        return erc20Service.tokenInfo()
+                .thenApply(snapshot -> {
                     Map<String, String> response = new HashMap<>();
-                    try {
-                        response.put("name", nameFuture.get());
-                        response.put("symbol", symbolFuture.get());
-                        response.put("decimals", decimalsFuture.get().toString());
-                        response.put("totalSupply", totalSupplyFuture.get().toString());
-                        response.put("contractAddress", erc20Service.getContractAddress());
-                        return ResponseEntity.ok(response);
-                    } catch (Exception e) {
-                        throw new RuntimeException("Failed to get token info: " + e.getMessage());
-                    }
+                    response.put("name", snapshot.get(0));
+                    response.put("symbol", snapshot.get(1));
+                    response.put("decimals", snapshot.<BigInteger>get(2).toString());
+                    response.put("totalSupply", snapshot.<BigInteger>get(3).toString());
+                    response.put("blockNumber", snapshot.blockNumber().toString());
+                    response.put("contractAddress", erc20Service.getContractAddress());
+                    return ResponseEntity.ok(response);
                 })
-                .exceptionally(throwable -> {
-                    Map<String, String> response = new HashMap<>();
-                    response.put("error", "Token info query failed: " + throwable.getMessage());
-                    return ResponseEntity.badRequest().body(response);
-                });
+                .exceptionally(throwable -> failure("Token info query failed: ", throwable));
+    }
+
+    /**
+     * 订阅Transfer事件（Server-Sent Events）
+     */
+    @GetMapping(value = "/events/transfer", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter transferEvents() {
+        return EventStreams.toSse(erc20Service.transferEvents(), "Transfer", event -> Map.of(
+                "from", event.from,
+                "to", event.to,
+                "value", event.value.toString()));
+    }
+
+    /**
+     * 订阅Approval事件（Server-Sent Events）
+     */
+    @GetMapping(value = "/events/approval", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter approvalEvents() {
+        return EventStreams.toSse(erc20Service.approvalEvents(), "Approval", event -> Map.of(
+                "owner", event.owner,
+                "spender", event.spender,
+                "value", event.value.toString()));
+    }
+
+    /**
+     * 按区块范围回填Transfer事件：逐条解析并以 NDJSON 流式返回，内存占用与事件数量无关
+     */
+    @GetMapping(value = "/events/transfer/range", produces = "application/x-ndjson")
+    public void transferEventRange(@RequestParam BigInteger fromBlock,
+                                   @RequestParam(required = false) BigInteger toBlock,
+                                   HttpServletResponse response) throws IOException {
+        if (!erc20Service.isContractLoaded()) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Contract not loaded");
+            return;
+        }
+        response.setContentType("application/x-ndjson");
+        OutputStream out = response.getOutputStream();
+        long count = erc20Service.streamTransferEvents(
+                DefaultBlockParameter.valueOf(fromBlock), blockOrLatest(toBlock),
+                event -> writeLine(out, EventStreams.payload(event, e -> Map.of(
+                        "from", e.from,
+                        "to", e.to,
+                        "value", e.value.toString()))));
+        log.info("Streamed {} Transfer events from block {}", count, fromBlock);
+    }
+
+    /**
+     * 按区块范围回填Approval事件：逐条解析并以 NDJSON 流式返回，内存占用与事件数量无关
+     */
+    @GetMapping(value = "/events/approval/range", produces = "application/x-ndjson")
+    public void approvalEventRange(@RequestParam BigInteger fromBlock,
+                                   @RequestParam(required = false) BigInteger toBlock,
+                                   HttpServletResponse response) throws IOException {
+        if (!erc20Service.isContractLoaded()) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Contract not loaded");
+            return;
+        }
+        response.setContentType("application/x-ndjson");
+        OutputStream out = response.getOutputStream();
+        long count = erc20Service.streamApprovalEvents(
+                DefaultBlockParameter.valueOf(fromBlock), blockOrLatest(toBlock),
+                event -> writeLine(out, EventStreams.payload(event, e -> Map.of(
+                        "owner", e.owner,
+                        "spender", e.spender,
+                        "value", e.value.toString()))));
+        log.info("Streamed {} Approval events from block {}", count, fromBlock);
+    }
+
+    private static DefaultBlockParameter blockOrLatest(BigInteger block) {
+        return block != null ? DefaultBlockParameter.valueOf(block) : DefaultBlockParameterName.LATEST;
+    }
+
+    private void writeLine(OutputStream out, Map<String, String> line) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(line));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 构造错误响应：RPC 节点过载时返回 503，请求超时返回 504，其余错误返回 400
+     */
+    private ResponseEntity<Map<String, String>> failure(String message, Throwable throwable) {
+        Map<String, String> response = new HashMap<>();
+        response.put("error", message + throwable.getMessage());
+        if (RpcDeadlineExceededException.causedBy(throwable)) {
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(response);
+        }
+        if (RpcOverloadedException.causedBy(throwable)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(response);
+        }
+        return ResponseEntity.badRequest().body(response);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,48 @@
+package com.wetech.demo.web3j.controller;
+
+import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.web3j.protocol.core.methods.response.BaseEventResponse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Bridges contract event flows to Server-Sent Events responses, and formats events for NDJSON
+ * backfills.
+ */
+final class EventStreams {
+
+    private EventStreams() {
+    }
+
+    /**
+     * Forward every event to the client until it disconnects; the upstream subscription (and
+     * with it the {@code eth_subscribe} or filter) is released when the emitter completes.
+     */
+    static <T extends BaseEventResponse> SseEmitter toSse(Flowable<T> events, String name,
+                                                         Function<T, Map<String, String>> fields) {
+        SseEmitter emitter = new SseEmitter(0L);
+        Disposable subscription = events.subscribe(
+                event -> emitter.send(SseEmitter.event().name(name).data(payload(event, fields))),
+                emitter::completeWithError,
+                emitter::complete);
+        emitter.onCompletion(subscription::dispose);
+        emitter.onTimeout(subscription::dispose);
+        emitter.onError(error -> subscription.dispose());
+        return emitter;
+    }
+
+    /**
+     * The event's own fields plus the transaction and block it was emitted in.
+     */
+    static <T extends BaseEventResponse> Map<String, String> payload(
+            T event, Function<T, Map<String, String>> fields) {
+        Map<String, String> payload = new LinkedHashMap<>(fields.apply(event));
+        payload.put("transactionHash", event.log.getTransactionHash());
+        payload.put("blockNumber", event.log.getBlockNumber().toString());
+        return payload;
+    }
+}
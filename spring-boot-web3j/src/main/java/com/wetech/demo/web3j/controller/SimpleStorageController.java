@@ -1,10 +1,16 @@
 package com.wetech.demo.web3j.controller;
 
+import com.wetech.demo.web3j.rpc.RpcDeadlineExceededException;
+import com.wetech.demo.web3j.rpc.RpcOverloadedException;
 import com.wetech.demo.web3j.service.SimpleStorageService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigInteger;
 import java.util.HashMap;
@@ -49,14 +55,19 @@ public class SimpleStorageController {
 
     /**
      * Get the current value stored in the contract
-     * @return the stored value
+     * @param maxStaleBlocks serve a cached value up to this many blocks old while it is refreshed;
+     *                       also accepted as the X-Max-Stale-Blocks header
+     * @return the stored value and the block it was read at
      */
     @GetMapping("/value/get")
-    public CompletableFuture<ResponseEntity<Map<String, String>>> getValue() {
-        return storageService.getValue()
+    public CompletableFuture<ResponseEntity<Map<String, String>>> getValue(
+            @RequestParam(required = false) Long maxStaleBlocks,
+            @RequestHeader(name = StaleReads.HEADER, required = false) Long maxStaleHeader) {
+        return storageService.getValue(StaleReads.maxStaleBlocks(maxStaleBlocks, maxStaleHeader))
                 .thenApply(value -> {
                     Map<String, String> response = new HashMap<>();
-                    response.put("value", value.toString());
+                    response.put("value", value.value().toString());
+                    StaleReads.putBlock(response, value);
                     response.put("contractAddress", storageService.getContractAddress());
                     return ResponseEntity.ok(response);
                 });
@@ -98,4 +109,40 @@ public class SimpleStorageController {
             return ResponseEntity.ok(response);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Stream DataChanged events of the loaded contract as Server-Sent Events
+     * @return the event stream
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter dataChangedEvents() {
+        return EventStreams.toSse(storageService.dataChangedEvents(), "DataChanged",
+                event -> Map.of("newValue", event.newValue.toString()));
+    }
+
+    /**
+     * Report an overloaded RPC node as 503 so clients back off instead of retrying immediately
+     * @param e the rejection raised by the concurrency limiter
+     * @return the error details
+     */
+    @ExceptionHandler(RpcOverloadedException.class)
+    public ResponseEntity<Map<String, String>> handleOverload(RpcOverloadedException e) {
+        Map<String, String> response = new HashMap<>();
+        response.put("error", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(response);
+    }
+
+    /**
+     * Report a request whose RPC work did not finish within its deadline as 504
+     * @param e the deadline failure
+     * @return the error details
+     */
+    @ExceptionHandler(RpcDeadlineExceededException.class)
+    public ResponseEntity<Map<String, String>> handleDeadline(RpcDeadlineExceededException e) {
+        Map<String, String> response = new HashMap<>();
+        response.put("error", e.getMessage());
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(response);
+    }
+}
@@ -0,0 +1,34 @@
+package com.wetech.demo.web3j.controller;
+
+import com.wetech.demo.web3j.service.BlockValue;
+
+import java.util.Map;
+
+/**
+ * The {@code maxStaleBlocks} read option, accepted as a query parameter or as a header.
+ */
+final class StaleReads {
+
+    static final String HEADER = "X-Max-Stale-Blocks";
+
+    private StaleReads() {
+    }
+
+    /**
+     * @return the query parameter if given, else the header, else 0 (always read
+     *         at the head); negative values count as 0
+     */
+    static long maxStaleBlocks(Long param, Long header) {
+        Long value = param != null ? param : header;
+        return value != null ? Math.max(0, value) : 0;
+    }
+
+    /**
+     * Report the block a value was read at, when known.
+     */
+    static void putBlock(Map<String, String> response, BlockValue<?> value) {
+        if (value.blockNumber() != null) {
+            response.put("blockNumber", value.blockNumber().toString());
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.wetech.demo.web3j.rpc;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive limit on the number of in-flight calls to one RPC endpoint.
+ * <p>
+ * The limit grows additively while the smoothed round trip stays close to the smallest recently
+ * observed RTT and shrinks when it inflates (the node is queueing). Explicit overload signals
+ * such as timeouts or HTTP 429/503 cut it multiplicatively. Calls beyond the limit wait up to
+ * {@code maxWait} for a slot and are then rejected with {@link RpcOverloadedException}.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    public enum Outcome {
+        /** Call completed; its RTT feeds the limit. */
+        SUCCESS,
+        /** Timeout or explicit back-pressure from the node. */
+        OVERLOAD,
+        /** Result says nothing about capacity (cancelled, application error). */
+        IGNORE
+    }
+
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double RTT_TOLERANCE = 2.0;
+    private static final int MIN_RTT_WINDOW = 500;
+    private static final double RTT_SMOOTHING = 0.1;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long maxWaitNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private long minRttNanos = Long.MAX_VALUE;
+    private long windowMinRttNanos = Long.MAX_VALUE;
+    private double smoothedRttNanos;
+    private int windowSamples;
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, Duration maxWait) {
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Take a slot, waiting up to the configured maximum for one to free up.
+     */
+    public void acquire() throws RpcOverloadedException, InterruptedIOException {
+        lock.lock();
+        try {
+            long remaining = maxWaitNanos;
+            while (inFlight >= (int) limit) {
+                if (remaining <= 0) {
+                    rejected.incrementAndGet();
+                    throw new RpcOverloadedException("RPC endpoint " + name + " overloaded: "
+                            + inFlight + " calls in flight, limit " + (int) limit);
+                }
+                waiting++;
+                try {
+                    remaining = released.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for an RPC slot on " + name);
+                } finally {
+                    waiting--;
+                }
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release(long rttNanos, Outcome outcome) {
+        lock.lock();
+        try {
+            inFlight--;
+            switch (outcome) {
+                case SUCCESS -> onSample(rttNanos);
+                case OVERLOAD -> limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                case IGNORE -> {
+                }
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onSample(long rttNanos) {
+        windowMinRttNanos = Math.min(windowMinRttNanos, rttNanos);
+        if (++windowSamples >= MIN_RTT_WINDOW) {
+            // Re-learn the baseline so a permanently slower node does not keep shrinking the limit
+            minRttNanos = windowMinRttNanos;
+            windowMinRttNanos = Long.MAX_VALUE;
+            windowSamples = 0;
+        } else {
+            minRttNanos = Math.min(minRttNanos, rttNanos);
+        }
+
+        smoothedRttNanos = smoothedRttNanos == 0
+                ? rttNanos
+                : RTT_SMOOTHING * rttNanos + (1 - RTT_SMOOTHING) * smoothedRttNanos;
+        if (smoothedRttNanos > minRttNanos * RTT_TOLERANCE) {
+            limit = Math.max(minLimit, limit - 1 / limit);
+        } else if (inFlight + 1 >= limit / 2) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,245 @@
+package com.wetech.demo.web3j.rpc;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces JSON-RPC requests issued within a short window into a single batch request.
+ * <p>
+ * Only the configured methods are coalesced; everything else passes straight through. A batch is
+ * flushed when the window elapses after its first request or as soon as it reaches the maximum
+ * size, and each response is routed back to its caller by JSON-RPC id.
+ * <p>
+ * Flushes run on at most {@code flushThreads} threads; when all are busy the thread that closed
+ * the batch sends it itself. A batch is sent with the latest deadline and the most urgent priority
+ * among its callers, so the layers below still see the {@link RpcContext} and one impatient caller
+ * does not cut the batch short for everybody else; each caller is failed on its own deadline.
+ */
+@Slf4j
+public class BatchingWeb3jService extends ForwardingWeb3jService {
+
+    private final Set<String> methods;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService flusher;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Counter batchesSent;
+    private final Counter requestsBatched;
+    private final DistributionSummary batchSize;
+
+    private List<Pending<?>> pending = new ArrayList<>();
+
+    public BatchingWeb3jService(Web3jService delegate, Set<String> methods, Duration window, int maxBatchSize,
+                                int flushThreads, MeterRegistry meterRegistry) {
+        super(delegate);
+        this.methods = Set.copyOf(methods);
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.timer = Executors.newSingleThreadScheduledExecutor(daemon("rpc-batch-timer"));
+        this.flusher = new ThreadPoolExecutor(flushThreads, flushThreads, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), daemon("rpc-batch-flush"), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.batchesSent = Counter.builder("web3j.rpc.batch.sent")
+                .description("JSON-RPC batch requests sent to the node")
+                .register(meterRegistry);
+        this.requestsBatched = Counter.builder("web3j.rpc.batch.requests")
+                .description("Requests that travelled inside a batch")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("web3j.rpc.batch.size")
+                .description("Requests per flushed batch")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        if (!methods.contains(request.getMethod())) {
+            return delegate.send(request, responseType);
+        }
+        return await(enqueue(request, responseType));
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        if (!methods.contains(request.getMethod())) {
+            return delegate.sendAsync(request, responseType);
+        }
+        return enqueue(request, responseType);
+    }
+
+    @Override
+    public void close() throws IOException {
+        timer.shutdownNow();
+        flusher.shutdown();
+        super.close();
+    }
+
+    private <T extends Response> CompletableFuture<T> enqueue(Request<?, ?> request, Class<T> responseType) {
+        Long deadline = RpcContext.deadline();
+        Pending<T> entry = new Pending<>(request, responseType, RpcContext.priority(), deadline,
+                new CompletableFuture<>());
+        if (deadline != null) {
+            ScheduledFuture<?> expiry = timer.schedule(() -> entry.future().completeExceptionally(
+                    new RpcDeadlineExceededException("Request deadline exceeded")),
+                    deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            entry.future().whenComplete((value, error) -> expiry.cancel(false));
+        }
+        List<Pending<?>> full = null;
+        lock.lock();
+        try {
+            pending.add(entry);
+            if (pending.size() >= maxBatchSize) {
+                full = drain();
+            } else if (pending.size() == 1) {
+                timer.schedule(this::flushWindow, windowNanos, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full != null) {
+            List<Pending<?>> batch = full;
+            flusher.execute(() -> flush(batch));
+        }
+        return entry.future();
+    }
+
+    private void flushWindow() {
+        List<Pending<?>> batch;
+        lock.lock();
+        try {
+            batch = drain();
+        } finally {
+            lock.unlock();
+        }
+        if (!batch.isEmpty()) {
+            flusher.execute(() -> flush(batch));
+        }
+    }
+
+    private List<Pending<?>> drain() {
+        List<Pending<?>> batch = pending;
+        pending = new ArrayList<>();
+        return batch;
+    }
+
+    private void flush(List<Pending<?>> batch) {
+        RpcPriority priority = batch.stream().map(Pending::priority).min(Comparator.naturalOrder())
+                .orElse(RpcPriority.INTERACTIVE);
+        try {
+            RpcContext.call(priority, latestDeadline(batch), () -> {
+                dispatch(batch);
+                return null;
+            });
+        } catch (Exception e) {
+            // dispatch() completes every entry itself
+            log.debug("Flushing a batch of {} requests failed: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * @return the deadline by which no caller waits for the batch anymore, or {@code null} if one
+     * of them has none
+     */
+    private static Long latestDeadline(List<Pending<?>> batch) {
+        Long latest = null;
+        for (Pending<?> entry : batch) {
+            if (entry.deadline() == null) {
+                return null;
+            }
+            if (latest == null || entry.deadline() - latest > 0) {
+                latest = entry.deadline();
+            }
+        }
+        return latest;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void dispatch(List<Pending<?>> batch) {
+        if (batch.size() == 1) {
+            sendSingle(batch.get(0));
+            return;
+        }
+
+        BatchRequest batchRequest = new BatchRequest(delegate);
+        Map<Long, Pending<?>> byId = new HashMap<>();
+        for (Pending<?> entry : batch) {
+            batchRequest.add((Request) entry.request());
+            byId.put(entry.request().getId(), entry);
+        }
+        batchesSent.increment();
+        requestsBatched.increment(batch.size());
+        batchSize.record(batch.size());
+
+        try {
+            BatchResponse batchResponse = delegate.sendBatch(batchRequest);
+            for (Response<?> response : batchResponse.getResponses()) {
+                Pending<?> entry = byId.remove(response.getId());
+                if (entry != null) {
+                    entry.complete(response, null);
+                }
+            }
+            for (Pending<?> missing : byId.values()) {
+                missing.complete(null, new IOException("No response in batch for request id " + missing.request().getId()));
+            }
+        } catch (Exception e) {
+            log.debug("Batch of {} requests failed: {}", batch.size(), e.getMessage());
+            batch.forEach(entry -> entry.complete(null, e));
+        }
+    }
+
+    private <T extends Response> void sendSingle(Pending<T> entry) {
+        try {
+            entry.complete(delegate.send(entry.request(), entry.responseType()), null);
+        } catch (Exception e) {
+            entry.complete(null, e);
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private record Pending<T extends Response>(Request<?, ?> request, Class<T> responseType, RpcPriority priority,
+                                               Long deadline, CompletableFuture<T> future) {
+
+        void complete(Object response, Throwable error) {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(responseType.cast(response));
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.wetech.demo.web3j.rpc;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.InflaterSource;
+import okio.Okio;
+import okio.Source;
+
+import java.io.IOException;
+import java.util.zip.Inflater;
+
+/**
+ * Negotiates gzip/deflate with the RPC node and decodes responses as they are read.
+ * <p>
+ * OkHttp only decodes gzip transparently; advertising deflate as well means this interceptor
+ * owns decoding. The decoded body is a stream over the compressed one, so {@link LogStreamReader}
+ * still parses large {@code eth_getLogs} responses without buffering them. Request bodies of at
+ * least {@code requestMinBytes} (typically large batches) are gzipped when that makes them smaller;
+ * the node must accept {@code Content-Encoding: gzip}, so this is off unless configured.
+ * <p>
+ * Bytes on the wire and bytes saved are counted per direction under
+ * {@code web3j.http.compression.*}.
+ */
+public class CompressionInterceptor implements Interceptor {
+
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+
+    private final long requestMinBytes;
+
+    private final Counter responseWireBytes;
+    private final Counter responseSavedBytes;
+    private final Counter requestWireBytes;
+    private final Counter requestSavedBytes;
+
+    /**
+     * @param requestMinBytes smallest request body to compress; 0 or less never compresses requests
+     */
+    public CompressionInterceptor(long requestMinBytes, MeterRegistry meterRegistry) {
+        this.requestMinBytes = requestMinBytes;
+        this.responseWireBytes = wireBytes("response", meterRegistry);
+        this.responseSavedBytes = savedBytes("response", meterRegistry);
+        this.requestWireBytes = wireBytes("request", meterRegistry);
+        this.requestSavedBytes = savedBytes("request", meterRegistry);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (request.header(ACCEPT_ENCODING) != null) {
+            // Caller negotiates itself
+            return chain.proceed(request);
+        }
+        Request.Builder builder = request.newBuilder().header(ACCEPT_ENCODING, "gzip, deflate");
+        compressBody(request, builder);
+        return decode(chain.proceed(builder.build()));
+    }
+
+    private void compressBody(Request request, Request.Builder builder) throws IOException {
+        RequestBody body = request.body();
+        if (requestMinBytes <= 0 || body == null || request.header(CONTENT_ENCODING) != null) {
+            return;
+        }
+        long length = body.contentLength();
+        if (length < requestMinBytes) {
+            return;
+        }
+        Buffer compressed = new Buffer();
+        try (BufferedSink sink = Okio.buffer(new GzipSink(compressed))) {
+            body.writeTo(sink);
+        }
+        if (compressed.size() >= length) {
+            return;
+        }
+        requestWireBytes.increment(compressed.size());
+        requestSavedBytes.increment(length - compressed.size());
+        builder.header(CONTENT_ENCODING, "gzip")
+                .method(request.method(), RequestBody.create(compressed.readByteString(), body.contentType()));
+    }
+
+    private Response decode(Response response) throws IOException {
+        String encoding = response.header(CONTENT_ENCODING);
+        ResponseBody body = response.body();
+        if (encoding == null || body == null) {
+            return response;
+        }
+        CountingSource wire = new CountingSource(body.source());
+        Source decoded = switch (encoding.trim().toLowerCase()) {
+            case "gzip" -> new GzipSource(wire);
+            case "deflate" -> deflateSource(wire);
+            default -> null;
+        };
+        if (decoded == null) {
+            return response;
+        }
+        BufferedSource source = Okio.buffer(new MeteredSource(decoded, wire));
+        return response.newBuilder()
+                .removeHeader(CONTENT_ENCODING)
+                .removeHeader("Content-Length")
+                .body(ResponseBody.create(source, body.contentType(), -1))
+                .build();
+    }
+
+    /**
+     * "deflate" should be zlib-wrapped, but some servers send a raw deflate stream; tell them apart
+     * by the zlib header check bits.
+     */
+    private static Source deflateSource(Source wire) throws IOException {
+        BufferedSource buffered = Okio.buffer(wire);
+        boolean zlib = false;
+        if (buffered.request(2)) {
+            int cmf = buffered.getBuffer().getByte(0) & 0xff;
+            int flg = buffered.getBuffer().getByte(1) & 0xff;
+            zlib = (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+        }
+        return new InflaterSource(buffered, new Inflater(!zlib));
+    }
+
+    private static Counter wireBytes(String direction, MeterRegistry meterRegistry) {
+        return Counter.builder("web3j.http.compression.wire.bytes")
+                .description("Compressed RPC bytes actually transferred")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .register(meterRegistry);
+    }
+
+    private static Counter savedBytes(String direction, MeterRegistry meterRegistry) {
+        return Counter.builder("web3j.http.compression.saved.bytes")
+                .description("RPC bytes not transferred thanks to compression")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .register(meterRegistry);
+    }
+
+    private static final class CountingSource extends ForwardingSource {
+
+        private long count;
+
+        CountingSource(Source delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Counts decoded bytes and records the saving once the body is exhausted or closed.
+     */
+    private final class MeteredSource extends ForwardingSource {
+
+        private final CountingSource wire;
+        private long decoded;
+        private boolean recorded;
+
+        MeteredSource(Source delegate, CountingSource wire) {
+            super(delegate);
+            this.wire = wire;
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if (read > 0) {
+                decoded += read;
+            } else if (read == -1) {
+                record();
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            record();
+            super.close();
+        }
+
+        private void record() {
+            if (recorded) {
+                return;
+            }
+            recorded = true;
+            responseWireBytes.increment(wire.count);
+            responseSavedBytes.increment(Math.max(0, decoded - wire.count));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.wetech.demo.web3j.rpc;
+
+import io.reactivex.Flowable;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.websocket.events.Notification;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Base class for {@link Web3jService} decorators; forwards every call to the wrapped service so
+ * subclasses only override what they change.
+ */
+public abstract class ForwardingWeb3jService implements Web3jService {
+
+    protected final Web3jService delegate;
+
+    protected ForwardingWeb3jService(Web3jService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        return delegate.send(request, responseType);
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        return delegate.sendAsync(request, responseType);
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        return delegate.sendBatch(batchRequest);
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        return delegate.sendBatchAsync(batchRequest);
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod,
+                                                             Class<T> responseType) {
+        return delegate.subscribe(request, unsubscribeMethod, responseType);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    /**
+     * Block on a future on behalf of a synchronous {@code send}, translating failures into the
+     * {@link IOException} callers of {@link Web3jService#send} expect.
+     */
+    protected static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for RPC response");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
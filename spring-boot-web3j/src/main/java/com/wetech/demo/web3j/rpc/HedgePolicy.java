@@ -0,0 +1,21 @@
+package com.wetech.demo.web3j.rpc;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * When {@link RoutingWeb3jService} may send a duplicate of a slow read to a second endpoint.
+ *
+ * @param methods       idempotent JSON-RPC methods eligible for hedging
+ * @param percentile    latency percentile of the primary endpoint after which the hedge is sent
+ * @param minDelay      lower bound on the hedge delay, also used before any latency is known
+ * @param budgetPercent maximum extra load from hedges, as a percentage of hedgeable requests
+ * @param maxInFlight   hedges that may run at once; a hedge beyond that is skipped
+ */
+public record HedgePolicy(Set<String> methods, double percentile, Duration minDelay, double budgetPercent,
+                          int maxInFlight) {
+
+    public HedgePolicy {
+        methods = Set.copyOf(methods);
+    }
+}
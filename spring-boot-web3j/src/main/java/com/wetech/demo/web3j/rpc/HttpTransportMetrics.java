@@ -0,0 +1,46 @@
+package com.wetech.demo.web3j.rpc;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+/**
+ * Connection pool and dispatcher gauges for the RPC {@link OkHttpClient}.
+ * <p>
+ * RPC calls execute on their caller's thread and count as running; only asynchronous calls
+ * (connection warm-up) can show up as {@code web3j.http.dispatcher.queued}.
+ */
+public class HttpTransportMetrics implements MeterBinder {
+
+    private final OkHttpClient httpClient;
+
+    public HttpTransportMetrics(OkHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        ConnectionPool pool = httpClient.connectionPool();
+        Dispatcher dispatcher = httpClient.dispatcher();
+
+        Gauge.builder("web3j.http.pool.connections", pool, ConnectionPool::connectionCount)
+                .description("Open connections to the RPC node")
+                .register(registry);
+        Gauge.builder("web3j.http.pool.idle", pool, ConnectionPool::idleConnectionCount)
+                .description("Idle connections kept alive for reuse")
+                .register(registry);
+        Gauge.builder("web3j.http.dispatcher.running", dispatcher, Dispatcher::runningCallsCount)
+                .description("RPC calls currently in flight")
+                .register(registry);
+        Gauge.builder("web3j.http.dispatcher.queued", dispatcher, Dispatcher::queuedCallsCount)
+                .description("Asynchronous calls waiting for a free per-host slot")
+                .register(registry);
+        Gauge.builder("web3j.http.dispatcher.saturation", dispatcher,
+                        d -> (double) d.runningCallsCount() / d.getMaxRequestsPerHost())
+                .description("In-flight calls as a fraction of the per-host limit")
+                .register(registry);
+    }
+}
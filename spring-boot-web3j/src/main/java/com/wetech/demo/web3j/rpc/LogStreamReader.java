@@ -0,0 +1,105 @@
+package com.wetech.demo.web3j.rpc;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Runs {@code eth_getLogs} and hands every log to a consumer as soon as it has been parsed.
+ * <p>
+ * web3j materialises the whole response before mapping it, so a wide block range costs heap
+ * proportional to the number of logs. Over HTTP this reader parses the response body with a
+ * Jackson streaming parser instead, keeping only one log in memory at a time. Other transports
+ * buffer the response anyway and fall back to a regular call.
+ */
+public class LogStreamReader {
+
+    private final ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+    private final RoutingWeb3jService router;
+    private final PriorityScheduler scheduler;
+
+    public LogStreamReader(RoutingWeb3jService router, PriorityScheduler scheduler) {
+        this.router = router;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Runs in the caller's {@link RpcContext#priority() lane}.
+     *
+     * @return the number of logs passed to {@code consumer}
+     * @throws IOException if the call fails or the node returns a JSON-RPC error
+     */
+    public long stream(EthFilter filter, Consumer<Log> consumer) throws IOException {
+        Result result;
+        scheduler.acquire(RpcContext.priority(), RpcContext.deadline());
+        try {
+            result = router.withEndpoint(transport -> read(transport, filter, consumer));
+        } finally {
+            scheduler.release();
+        }
+        if (result.error() != null) {
+            throw new IOException("eth_getLogs failed: " + result.error().getMessage());
+        }
+        return result.count();
+    }
+
+    private Result read(Web3jService transport, EthFilter filter, Consumer<Log> consumer) throws IOException {
+        Request<?, EthLog> request = new Request<>("eth_getLogs", List.of(filter), transport, EthLog.class);
+        if (transport instanceof PooledHttpService http) {
+            return http.stream(objectMapper.writeValueAsString(request), body -> parse(body, consumer));
+        }
+
+        EthLog response = transport.send(request, EthLog.class);
+        if (response.hasError()) {
+            return new Result(0, response.getError());
+        }
+        long count = 0;
+        for (EthLog.LogResult<?> result : response.getLogs()) {
+            if (result instanceof EthLog.LogObject log) {
+                consumer.accept(log);
+                count++;
+            }
+        }
+        return new Result(count, null);
+    }
+
+    private Result parse(InputStream body, Consumer<Log> consumer) throws IOException {
+        long count = 0;
+        Response.Error error = null;
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Malformed eth_getLogs response");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("result".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        consumer.accept(objectMapper.readValue(parser, Log.class));
+                        count++;
+                    }
+                } else if ("error".equals(field) && value == JsonToken.START_OBJECT) {
+                    error = objectMapper.readValue(parser, Response.Error.class);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new Result(count, error);
+    }
+
+    private record Result(long count, Response.Error error) {
+    }
+}
@@ -0,0 +1,193 @@
+package com.wetech.demo.web3j.rpc;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Headers;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.web3j.protocol.http.HttpService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link HttpService} that sends every JSON-RPC call over a shared, tuned {@link OkHttpClient}.
+ * <p>
+ * Calls execute on the calling thread, so a request occupies exactly one thread and concurrency
+ * is bounded by the executors and the endpoint's {@link AdaptiveConcurrencyLimiter} in front of
+ * this transport. Blocking socket reads do not react to {@link Thread#interrupt()}, so in-flight
+ * calls are registered with a watcher that cancels the HTTP exchange of an interrupted caller
+ * (e.g. a primary read beaten by its hedge, or work past its deadline).
+ */
+@Slf4j
+public class PooledHttpService extends HttpService {
+
+    private static final String WARM_UP_PAYLOAD =
+            "{\"jsonrpc\":\"2.0\",\"method\":\"web3_clientVersion\",\"params\":[],\"id\":0}";
+
+    private static final long INTERRUPT_CHECK_MILLIS = 20;
+
+    private final OkHttpClient httpClient;
+    private final Map<Call, Thread> inFlight = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService interruptWatcher;
+
+    public PooledHttpService(String url, OkHttpClient httpClient) {
+        super(url, httpClient);
+        this.httpClient = httpClient;
+        this.interruptWatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rpc-http-interrupt-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        interruptWatcher.scheduleWithFixedDelay(this::cancelInterrupted,
+                INTERRUPT_CHECK_MILLIS, INTERRUPT_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The response body is handed to web3j's parser as a stream over the connection (and over
+     * {@link CompressionInterceptor}'s decoder when enabled), so responses are never held in
+     * memory whole. The parser closes the stream, which releases the connection.
+     */
+    @Override
+    protected InputStream performIO(String payload) throws IOException {
+        Response response = execute(payload);
+        if (!response.isSuccessful()) {
+            try (response) {
+                rejectUnsuccessful(response);
+            }
+        }
+        ResponseBody body = response.body();
+        if (body == null) {
+            response.close();
+            return InputStream.nullInputStream();
+        }
+        return body.byteStream();
+    }
+
+    /**
+     * Open up to {@code connections} connections to the node by issuing concurrent
+     * {@code web3_clientVersion} calls, so the first real requests do not pay for TCP/TLS setup.
+     * @return the number of calls that succeeded
+     */
+    public int warmUp(int connections, Duration timeout) {
+        CountDownLatch done = new CountDownLatch(connections);
+        AtomicInteger succeeded = new AtomicInteger();
+        for (int i = 0; i < connections; i++) {
+            httpClient.newCall(buildRequest(WARM_UP_PAYLOAD)).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    log.debug("Warm-up call to {} failed: {}", getUrl(), e.getMessage());
+                    done.countDown();
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    if (response.isSuccessful()) {
+                        succeeded.incrementAndGet();
+                    }
+                    response.close();
+                    done.countDown();
+                }
+            });
+        }
+        try {
+            done.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return succeeded.get();
+    }
+
+    /**
+     * Send {@code payload} and hand the raw response body to {@code reader} without buffering it,
+     * so very large results can be parsed incrementally. The body is closed when the reader returns.
+     */
+    public <R> R stream(String payload, BodyReader<R> reader) throws IOException {
+        Response response = execute(payload);
+        try (response) {
+            rejectUnsuccessful(response);
+            ResponseBody body = response.body();
+            return reader.read(body == null ? InputStream.nullInputStream() : body.byteStream());
+        }
+    }
+
+    /**
+     * Execute the call on the calling thread until its response headers arrive; an interrupt
+     * cancels the exchange.
+     */
+    private Response execute(String payload) throws IOException {
+        Thread caller = Thread.currentThread();
+        if (caller.isInterrupted()) {
+            throw interrupted();
+        }
+        Call call = httpClient.newCall(buildRequest(payload));
+        inFlight.put(call, caller);
+        try {
+            return call.execute();
+        } catch (IOException e) {
+            if (caller.isInterrupted()) {
+                throw interrupted();
+            }
+            throw e;
+        } finally {
+            inFlight.remove(call);
+        }
+    }
+
+    private void cancelInterrupted() {
+        inFlight.forEach((call, caller) -> {
+            if (caller.isInterrupted()) {
+                call.cancel();
+            }
+        });
+    }
+
+    private InterruptedIOException interrupted() {
+        return new InterruptedIOException("RPC call to " + getUrl() + " interrupted");
+    }
+
+    public OkHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    @Override
+    public void close() throws IOException {
+        interruptWatcher.shutdownNow();
+        super.close();
+    }
+
+    private Request buildRequest(String payload) {
+        return new Request.Builder()
+                .url(getUrl())
+                .headers(Headers.of(getHeaders()))
+                .post(RequestBody.create(payload, JSON_MEDIA_TYPE))
+                .build();
+    }
+
+    private static void rejectUnsuccessful(Response response) throws IOException {
+        if (!response.isSuccessful()) {
+            ResponseBody body = response.body();
+            String text = body == null ? "N/A" : body.string();
+            throw new RpcHttpStatusException(response.code(),
+                    "Invalid response received: " + response.code() + "; " + text);
+        }
+    }
+
+    @FunctionalInterface
+    public interface BodyReader<R> {
+        R read(InputStream body) throws IOException;
+    }
+}
@@ -0,0 +1,62 @@
+package com.wetech.demo.web3j.rpc;
+
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.utils.Async;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Admits every call through the {@link PriorityScheduler} lane given by {@link RpcContext}, and
+ * refuses to start calls whose request deadline has already passed. Asynchronous sends capture
+ * the caller's context before hopping threads.
+ */
+public class PrioritizedWeb3jService extends ForwardingWeb3jService {
+
+    private final PriorityScheduler scheduler;
+
+    public PrioritizedWeb3jService(Web3jService delegate, PriorityScheduler scheduler) {
+        super(delegate);
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        RpcContext.checkDeadline();
+        scheduler.acquire(RpcContext.priority(), RpcContext.deadline());
+        try {
+            return delegate.send(request, responseType);
+        } finally {
+            scheduler.release();
+        }
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        RpcPriority priority = RpcContext.priority();
+        Long deadline = RpcContext.deadline();
+        return Async.run(() -> RpcContext.call(priority, deadline, () -> send(request, responseType)));
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        RpcContext.checkDeadline();
+        scheduler.acquire(RpcContext.priority(), RpcContext.deadline());
+        try {
+            return delegate.sendBatch(batchRequest);
+        } finally {
+            scheduler.release();
+        }
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        RpcPriority priority = RpcContext.priority();
+        Long deadline = RpcContext.deadline();
+        return Async.run(() -> RpcContext.call(priority, deadline, () -> sendBatch(batchRequest)));
+    }
+}
@@ -0,0 +1,228 @@
+package com.wetech.demo.web3j.rpc;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Weighted admission of RPC calls into the transport, with one queue per {@link RpcPriority}.
+ * <p>
+ * Up to {@code maxConcurrency} calls proceed at once. Beyond that, callers wait in their lane and
+ * freed slots are handed out by stride scheduling in proportion to the lane shares, so a flood of
+ * background reads cannot crowd out interactive ones, nor interactive reads transactions. A
+ * caller that has been queued for longer than the starvation timeout is admitted next regardless
+ * of shares, and one whose request deadline passes while queued gives up its place.
+ * <p>
+ * The scheduler sits above request batching, so the limit counts logical requests: a call
+ * waiting for its batch to be flushed already holds its slot, and one JSON-RPC batch on the wire
+ * may carry up to {@code maxConcurrency} of them.
+ */
+public class PriorityScheduler implements MeterBinder {
+
+    private static final RpcPriority[] LANES = RpcPriority.values();
+
+    private final int maxConcurrency;
+    private final long starvationNanos;
+    private final double[] strides = new double[LANES.length];
+    private final double[] passes = new double[LANES.length];
+    private final Deque<Waiter>[] queues;
+    private final AtomicLong[] admitted = new AtomicLong[LANES.length];
+    private final AtomicLong promoted = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private int inFlight;
+    private double virtualTime;
+
+    @SuppressWarnings("unchecked")
+    public PriorityScheduler(int maxConcurrency, Map<RpcPriority, Integer> shares, Duration starvationTimeout) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.starvationNanos = starvationTimeout.toNanos();
+        this.queues = new Deque[LANES.length];
+        for (RpcPriority lane : LANES) {
+            int share = Math.max(1, shares.getOrDefault(lane, 1));
+            strides[lane.ordinal()] = 1.0 / share;
+            queues[lane.ordinal()] = new ArrayDeque<>();
+            admitted[lane.ordinal()] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Take a slot in {@code priority}'s lane, waiting until one is handed out or, if
+     * {@code deadlineNanos} is not {@code null}, until that {@link System#nanoTime()} passes.
+     *
+     * @throws RpcDeadlineExceededException if the deadline passes while queued
+     * @throws InterruptedIOException if the caller is interrupted while queued
+     */
+    public void acquire(RpcPriority priority, Long deadlineNanos) throws IOException {
+        int lane = priority.ordinal();
+        lock.lock();
+        try {
+            if (inFlight < maxConcurrency && nothingQueued()) {
+                inFlight++;
+                admitted[lane].incrementAndGet();
+                return;
+            }
+            Waiter waiter = new Waiter(lock.newCondition(), System.nanoTime());
+            if (queues[lane].isEmpty()) {
+                // An idle lane must not bank credit and then monopolise the slots
+                passes[lane] = Math.max(passes[lane], virtualTime);
+            }
+            queues[lane].addLast(waiter);
+            try {
+                while (!waiter.granted) {
+                    if (deadlineNanos == null) {
+                        waiter.ready.await();
+                        continue;
+                    }
+                    long remaining = deadlineNanos - System.nanoTime();
+                    if (remaining <= 0) {
+                        queues[lane].remove(waiter);
+                        expired.incrementAndGet();
+                        throw new RpcDeadlineExceededException("Request deadline exceeded while queued for an RPC slot");
+                    }
+                    waiter.ready.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    inFlight--;
+                    dispatch();
+                } else {
+                    queues[lane].remove(waiter);
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while queued for an RPC slot");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("web3j.rpc.priority.in_flight", this, PriorityScheduler::getInFlight)
+                .register(registry);
+        for (RpcPriority lane : LANES) {
+            String name = lane.name().toLowerCase();
+            Gauge.builder("web3j.rpc.priority.queued", this, s -> s.getQueued(lane))
+                    .description("Calls waiting for a slot in this lane")
+                    .tag("lane", name)
+                    .register(registry);
+            FunctionCounter.builder("web3j.rpc.priority.admitted", admitted[lane.ordinal()], AtomicLong::get)
+                    .tag("lane", name)
+                    .register(registry);
+        }
+        FunctionCounter.builder("web3j.rpc.priority.promoted", promoted, AtomicLong::get)
+                .description("Calls admitted out of turn because they were starving")
+                .register(registry);
+        FunctionCounter.builder("web3j.rpc.priority.expired", expired, AtomicLong::get)
+                .description("Calls whose request deadline passed while they were queued")
+                .register(registry);
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued(RpcPriority lane) {
+        lock.lock();
+        try {
+            return queues[lane.ordinal()].size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean nothingQueued() {
+        for (Deque<Waiter> queue : queues) {
+            if (!queue.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void dispatch() {
+        while (inFlight < maxConcurrency) {
+            int lane = nextLane();
+            if (lane < 0) {
+                return;
+            }
+            Waiter waiter = queues[lane].pollFirst();
+            waiter.granted = true;
+            inFlight++;
+            admitted[lane].incrementAndGet();
+            waiter.ready.signal();
+        }
+    }
+
+    /**
+     * The lane with the lowest stride pass, unless some lane's head has been waiting past the
+     * starvation timeout, in which case the longest-waiting head goes first.
+     */
+    private int nextLane() {
+        long now = System.nanoTime();
+        int next = -1;
+        int starving = -1;
+        long oldest = Long.MAX_VALUE;
+        for (int lane = 0; lane < queues.length; lane++) {
+            Waiter head = queues[lane].peekFirst();
+            if (head == null) {
+                continue;
+            }
+            if (next < 0 || passes[lane] < passes[next]) {
+                next = lane;
+            }
+            if (now - head.enqueuedAt > starvationNanos && head.enqueuedAt < oldest) {
+                starving = lane;
+                oldest = head.enqueuedAt;
+            }
+        }
+        if (starving >= 0 && starving != next) {
+            promoted.incrementAndGet();
+            next = starving;
+        }
+        if (next >= 0) {
+            virtualTime = passes[next];
+            passes[next] += strides[next];
+        }
+        return next;
+    }
+
+    private static final class Waiter {
+        private final Condition ready;
+        private final long enqueuedAt;
+        private boolean granted;
+
+        private Waiter(Condition ready, long enqueuedAt) {
+            this.ready = ready;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.wetech.demo.web3j.rpc;
+
+import io.reactivex.Flowable;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.websocket.WebSocketClient;
+import org.web3j.protocol.websocket.WebSocketService;
+import org.web3j.protocol.websocket.events.Notification;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link WebSocketService} that reconnects with exponential backoff when the socket drops.
+ * <p>
+ * Requests fail fast with {@link ConnectException} while disconnected, which lets
+ * {@link RoutingWeb3jService} fail over and eject the endpoint until the link is back.
+ * {@code eth_subscribe} streams survive a reconnect: web3j errors them when the socket closes,
+ * and they are transparently re-subscribed once a new connection is up. Notifications emitted
+ * while disconnected are lost.
+ */
+@Slf4j
+public class ReconnectingWebSocketService implements Web3jService {
+
+    private final URI uri;
+    private final long minDelayMillis;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService reconnector;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile WebSocketService current;
+    private volatile boolean connected;
+    private volatile boolean closed;
+    private int attempts;
+
+    public ReconnectingWebSocketService(String url, Duration minDelay, Duration maxDelay) {
+        this.uri = URI.create(url);
+        this.minDelayMillis = Math.max(1, minDelay.toMillis());
+        this.maxDelayMillis = Math.max(minDelayMillis, maxDelay.toMillis());
+        this.reconnector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rpc-ws-reconnect-" + uri.getHost());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Open the initial connection. If the node is not reachable yet, reconnection continues in
+     * the background instead of failing application startup.
+     */
+    public void connect() {
+        lock.lock();
+        try {
+            open();
+        } catch (ConnectException e) {
+            log.warn("WebSocket {} not reachable yet: {}", uri.getHost(), e.getMessage());
+            scheduleReconnect();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        return ForwardingWeb3jService.await(connected().sendAsync(request, responseType));
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        try {
+            return connected().sendAsync(request, responseType);
+        } catch (ConnectException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        return ForwardingWeb3jService.await(connected().sendBatchAsync(batchRequest));
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        try {
+            return connected().sendBatchAsync(batchRequest);
+        } catch (ConnectException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod,
+                                                             Class<T> responseType) {
+        return Flowable.defer(() -> connected().subscribe(request, unsubscribeMethod, responseType))
+                .retryWhen(errors -> errors.flatMap(error -> {
+                    if (closed) {
+                        return Flowable.<Long>error(error);
+                    }
+                    log.warn("Subscription {} on {} interrupted, re-subscribing: {}",
+                            request.getMethod(), uri.getHost(), error.getMessage());
+                    return Flowable.timer(minDelayMillis, TimeUnit.MILLISECONDS);
+                }));
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        connected = false;
+        reconnector.shutdownNow();
+        WebSocketService service = current;
+        if (service != null) {
+            service.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ws:" + uri.getHost();
+    }
+
+    private WebSocketService connected() throws ConnectException {
+        WebSocketService service = current;
+        if (!connected || service == null) {
+            throw new ConnectException("WebSocket " + uri.getHost() + " is not connected");
+        }
+        return service;
+    }
+
+    private void open() throws ConnectException {
+        WebSocketService previous = current;
+        WebSocketService service = new WebSocketService(new WebSocketClient(uri), false);
+        service.connect(
+                message -> {
+                },
+                error -> log.debug("WebSocket {} error: {}", uri.getHost(), error.getMessage()),
+                () -> onClosed(service));
+        current = service;
+        connected = true;
+        attempts = 0;
+        if (previous != null) {
+            // Releases the old socket's request-timeout scheduler
+            previous.close();
+        }
+    }
+
+    private void onClosed(WebSocketService service) {
+        lock.lock();
+        try {
+            if (closed || service != current) {
+                return;
+            }
+            connected = false;
+            log.warn("WebSocket {} closed, reconnecting", uri.getHost());
+            scheduleReconnect();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scheduleReconnect() {
+        if (closed) {
+            return;
+        }
+        long delay = Math.min(maxDelayMillis, minDelayMillis << Math.min(attempts, 20));
+        attempts++;
+        reconnector.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void reconnect() {
+        lock.lock();
+        try {
+            if (closed || connected) {
+                return;
+            }
+            int attempt = attempts;
+            open();
+            log.info("WebSocket {} reconnected after {} attempt(s)", uri.getHost(), attempt);
+        } catch (ConnectException e) {
+            log.debug("Reconnect to {} failed: {}", uri.getHost(), e.getMessage());
+            scheduleReconnect();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.wetech.demo.web3j.rpc;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.crypto.Hash;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.protocol.core.methods.response.EthTransaction;
+import org.web3j.utils.Async;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retries idempotent calls that failed for transient transport reasons.
+ * <p>
+ * Backoff uses decorrelated jitter, and every retry must be paid for from a {@link TokenBudget}
+ * funded by successful calls, so retries add at most a fixed percentage of load while the node
+ * is struggling. Local rejections (limiter overload, expired deadline, cancellation) and
+ * JSON-RPC errors are never retried.
+ * <p>
+ * {@code eth_sendRawTransaction} is only re-sent after {@code eth_getTransactionByHash} confirms
+ * the node does not already have the transaction; if it does, the known hash is returned as the
+ * result. If the lookup itself fails the original error is reported rather than guessing.
+ */
+@Slf4j
+public class RetryingWeb3jService extends ForwardingWeb3jService {
+
+    private static final String SEND_RAW_TRANSACTION = "eth_sendRawTransaction";
+
+    private final Set<String> idempotentMethods;
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final TokenBudget budget;
+
+    private final Counter retries;
+    private final Counter denied;
+    private final Counter alreadyKnown;
+
+    public RetryingWeb3jService(Web3jService delegate, Set<String> idempotentMethods, int maxAttempts,
+                                Duration baseDelay, Duration maxDelay, double budgetPercent,
+                                MeterRegistry meterRegistry) {
+        super(delegate);
+        this.idempotentMethods = Set.copyOf(idempotentMethods);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayNanos = baseDelay.toNanos();
+        this.maxDelayNanos = Math.max(baseDelayNanos, maxDelay.toNanos());
+        this.budget = new TokenBudget(budgetPercent / 100.0, 10);
+
+        this.retries = Counter.builder("web3j.rpc.retry.retries")
+                .description("Calls re-sent after a transient failure")
+                .register(meterRegistry);
+        this.denied = Counter.builder("web3j.rpc.retry.denied")
+                .description("Retries skipped because the retry budget was exhausted")
+                .register(meterRegistry);
+        this.alreadyKnown = Counter.builder("web3j.rpc.retry.already_known")
+                .description("Failed transaction submissions the node turned out to have received")
+                .register(meterRegistry);
+        Gauge.builder("web3j.rpc.retry.budget", budget, TokenBudget::available)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        if (SEND_RAW_TRANSACTION.equals(request.getMethod())) {
+            return sendRawTransaction(request, responseType);
+        }
+        if (!idempotentMethods.contains(request.getMethod())) {
+            return delegate.send(request, responseType);
+        }
+        long delay = baseDelayNanos;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T response = delegate.send(request, responseType);
+                budget.deposit();
+                return response;
+            } catch (IOException e) {
+                delay = backOff(request.getMethod(), e, attempt, delay);
+            }
+        }
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        RpcPriority priority = RpcContext.priority();
+        Long deadline = RpcContext.deadline();
+        return Async.run(() -> RpcContext.call(priority, deadline, () -> send(request, responseType)));
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        boolean idempotent = batchRequest.getRequests().stream()
+                .allMatch(request -> idempotentMethods.contains(request.getMethod()));
+        if (!idempotent) {
+            return delegate.sendBatch(batchRequest);
+        }
+        long delay = baseDelayNanos;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                BatchResponse response = delegate.sendBatch(batchRequest);
+                budget.deposit();
+                return response;
+            } catch (IOException e) {
+                delay = backOff("batch", e, attempt, delay);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        RpcPriority priority = RpcContext.priority();
+        Long deadline = RpcContext.deadline();
+        return Async.run(() -> RpcContext.call(priority, deadline, () -> sendBatch(batchRequest)));
+    }
+
+    private <T extends Response> T sendRawTransaction(Request<?, ?> request, Class<T> responseType)
+            throws IOException {
+        String txHash = Hash.sha3((String) request.getParams().get(0));
+        long delay = baseDelayNanos;
+        for (int attempt = 1; ; attempt++) {
+            T response;
+            try {
+                response = delegate.send(request, responseType);
+            } catch (IOException e) {
+                if (!isRetryable(e) || attempt >= maxAttempts) {
+                    throw e;
+                }
+                // The node may have accepted the transaction before the connection failed
+                if (isKnown(txHash, e)) {
+                    alreadyKnown.increment();
+                    return responseType.cast(knownHash(request, txHash));
+                }
+                delay = backOff(SEND_RAW_TRANSACTION, e, attempt, delay);
+                continue;
+            }
+            budget.deposit();
+            if (attempt > 1 && response.hasError() && isAlreadyKnownError(response.getError())) {
+                alreadyKnown.increment();
+                return responseType.cast(knownHash(request, txHash));
+            }
+            return response;
+        }
+    }
+
+    /**
+     * @throws IOException {@code failure} itself, if the status of the transaction cannot be established
+     */
+    private boolean isKnown(String txHash, IOException failure) throws IOException {
+        EthTransaction lookup;
+        try {
+            lookup = delegate.send(new Request<>("eth_getTransactionByHash", List.of(txHash),
+                    delegate, EthTransaction.class), EthTransaction.class);
+        } catch (IOException e) {
+            log.warn("Submission of {} failed and its status is unknown: {}", txHash, e.getMessage());
+            throw failure;
+        }
+        if (lookup.hasError()) {
+            log.warn("Submission of {} failed and its status is unknown: {}", txHash, lookup.getError().getMessage());
+            throw failure;
+        }
+        return lookup.getResult() != null;
+    }
+
+    private static EthSendTransaction knownHash(Request<?, ?> request, String txHash) {
+        EthSendTransaction response = new EthSendTransaction();
+        response.setId(request.getId());
+        response.setJsonrpc(request.getJsonrpc());
+        response.setResult(txHash);
+        return response;
+    }
+
+    private static boolean isAlreadyKnownError(Response.Error error) {
+        String message = error.getMessage();
+        return message != null && message.toLowerCase().contains("already known");
+    }
+
+    /**
+     * Sleep before the next attempt, or rethrow {@code failure} if it should not be retried.
+     * @return the delay used, which seeds the next decorrelated-jitter step
+     */
+    private long backOff(String method, IOException failure, int attempt, long previousDelay) throws IOException {
+        if (!isRetryable(failure) || attempt >= maxAttempts) {
+            throw failure;
+        }
+        if (!budget.tryWithdraw()) {
+            denied.increment();
+            throw failure;
+        }
+        long delay = Math.min(maxDelayNanos,
+                ThreadLocalRandom.current().nextLong(baseDelayNanos, Math.max(baseDelayNanos + 1, previousDelay * 3)));
+        Long deadline = RpcContext.deadline();
+        if (deadline != null && deadline - System.nanoTime() <= delay) {
+            throw failure;
+        }
+        retries.increment();
+        log.debug("Retrying {} in {}ms after attempt {} failed: {}",
+                method, TimeUnit.NANOSECONDS.toMillis(delay), attempt, failure.getMessage());
+        try {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off before retrying " + method);
+        }
+        return delay;
+    }
+
+    /**
+     * Connection failures, resets, read timeouts and gateway/overload statuses are transient.
+     * Anything decided locally or by the caller is not.
+     */
+    private static boolean isRetryable(IOException e) {
+        if (e instanceof RpcOverloadedException || e instanceof RpcDeadlineExceededException) {
+            return false;
+        }
+        if (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)) {
+            return false;
+        }
+        if (e instanceof RpcHttpStatusException status) {
+            return status.isTransient();
+        }
+        return true;
+    }
+}
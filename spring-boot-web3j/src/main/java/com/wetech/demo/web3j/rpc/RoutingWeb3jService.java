@@ -0,0 +1,634 @@
+package com.wetech.demo.web3j.rpc;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.reactivex.Flowable;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.crypto.SignedRawTransaction;
+import org.web3j.crypto.TransactionDecoder;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.websocket.events.Notification;
+import org.web3j.utils.Async;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Spreads JSON-RPC traffic over a pool of {@link RpcEndpoint}s.
+ * <p>
+ * Reads go to the better of two randomly picked healthy endpoints (by latency/error score) and
+ * fail over once to another endpoint on a transport error. Idempotent reads listed in the
+ * {@link HedgePolicy} are additionally hedged to a second endpoint when the first is slow.
+ * Nonce lookups and transaction submissions stick to one endpoint per sender so the node sees a
+ * consistent nonce sequence; they are never hedged. Filter polls and uninstalls go to the endpoint
+ * that created the filter, since filter ids only exist on that node.
+ * Endpoints that fail repeatedly are ejected and re-probed in the background. Every call passes
+ * through its endpoint's {@link AdaptiveConcurrencyLimiter}; a read rejected there fails over to
+ * another endpoint.
+ */
+@Slf4j
+public class RoutingWeb3jService implements Web3jService, MeterBinder {
+
+    private static final Set<String> WRITE_METHODS =
+            Set.of("eth_sendRawTransaction", "eth_sendTransaction", "eth_getTransactionCount");
+    private static final Set<String> NEW_FILTER_METHODS =
+            Set.of("eth_newFilter", "eth_newBlockFilter", "eth_newPendingTransactionFilter");
+    private static final Set<String> FILTER_METHODS =
+            Set.of("eth_getFilterChanges", "eth_getFilterLogs", "eth_uninstallFilter");
+
+    private final List<RpcEndpoint> endpoints;
+    private final int failureThreshold;
+    private final long ejectNanos;
+    private final Map<String, RpcEndpoint> writeAffinity = new ConcurrentHashMap<>();
+    private final Map<String, RpcEndpoint> filterAffinity = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService prober;
+
+    private final HedgePolicy hedgePolicy;
+    private final TokenBudget hedgeBudget;
+    private final ScheduledExecutorService hedgeTimer;
+    private final ExecutorService hedgeExecutor;
+    private final AtomicLong hedgesFired = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong hedgesDenied = new AtomicLong();
+
+    /**
+     * @param hedgePolicy when to hedge slow reads, or {@code null} to disable hedging
+     */
+    public RoutingWeb3jService(List<RpcEndpoint> endpoints, int failureThreshold, Duration ejectDuration,
+                               Duration probeInterval, HedgePolicy hedgePolicy) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one RPC endpoint is required");
+        }
+        this.endpoints = List.copyOf(endpoints);
+        this.failureThreshold = failureThreshold;
+        this.ejectNanos = ejectDuration.toNanos();
+        this.prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rpc-endpoint-prober");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = probeInterval.toMillis();
+        prober.scheduleWithFixedDelay(this::probeEjected, interval, interval, TimeUnit.MILLISECONDS);
+
+        this.hedgePolicy = hedgePolicy;
+        double budgetRatio = hedgePolicy == null ? 0 : hedgePolicy.budgetPercent() / 100.0;
+        this.hedgeBudget = new TokenBudget(budgetRatio, Math.max(1, budgetRatio * 100));
+        this.hedgeTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rpc-hedge-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Bounded and without a queue: a hedge that cannot start right away is not worth sending
+        int hedgeThreads = hedgePolicy == null ? 1 : Math.max(1, hedgePolicy.maxInFlight());
+        AtomicInteger hedgeThreadCount = new AtomicInteger();
+        this.hedgeExecutor = new ThreadPoolExecutor(hedgeThreads, hedgeThreads, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "rpc-hedge-" + hedgeThreadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public List<RpcEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Run a custom read against one healthy endpoint, under its concurrency limit and with its
+     * latency and failures recorded like any other call. There is no failover, because the
+     * operation may already have produced side effects (e.g. emitted streamed results).
+     */
+    public <R> R withEndpoint(TransportCall<R> operation) throws IOException {
+        RpcEndpoint endpoint = selectRead(null);
+        return call(endpoint, () -> operation.call(endpoint.getTransport()));
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        if (WRITE_METHODS.contains(request.getMethod())) {
+            RpcEndpoint endpoint = writeEndpoint(request);
+            return call(endpoint, () -> endpoint.getTransport().send(request, responseType));
+        }
+        RpcEndpoint filterEndpoint = filterEndpoint(request);
+        if (filterEndpoint != null) {
+            T response = call(filterEndpoint, () -> filterEndpoint.getTransport().send(request, responseType));
+            if (response.hasError() || "eth_uninstallFilter".equals(request.getMethod())) {
+                // Uninstalled, or expired on the node
+                filterAffinity.remove(filterKey(request.getParams().get(0)));
+            }
+            return response;
+        }
+        if (NEW_FILTER_METHODS.contains(request.getMethod())) {
+            return withFailover(endpoint -> () -> {
+                T response = endpoint.getTransport().send(request, responseType);
+                rememberFilter(endpoint, response);
+                return response;
+            });
+        }
+        if (isHedgeable(request.getMethod())) {
+            return hedged(endpoint -> () -> endpoint.getTransport().send(request, responseType));
+        }
+        return withFailover(endpoint -> () -> endpoint.getTransport().send(request, responseType));
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        return Async.run(() -> send(request, responseType));
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        List<String> methods = batchRequest.getRequests().stream().map(Request::getMethod).toList();
+        Request<?, ?> write = batchRequest.getRequests().stream()
+                .filter(request -> WRITE_METHODS.contains(request.getMethod()))
+                .findFirst()
+                .orElse(null);
+        if (write != null) {
+            // The whole batch follows the sender of its first write, like the same call sent alone
+            RpcEndpoint endpoint = writeEndpoint(write);
+            return call(endpoint, () -> endpoint.getTransport().sendBatch(batchRequest));
+        }
+        RpcEndpoint filterEndpoint = batchRequest.getRequests().stream()
+                .map(this::filterEndpoint)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null);
+        if (filterEndpoint != null) {
+            return call(filterEndpoint, () -> filterEndpoint.getTransport().sendBatch(batchRequest));
+        }
+        if (methods.stream().allMatch(this::isHedgeable)) {
+            return hedged(endpoint -> () -> endpoint.getTransport().sendBatch(batchRequest));
+        }
+        return withFailover(endpoint -> () -> {
+            BatchResponse response = endpoint.getTransport().sendBatch(batchRequest);
+            Set<Long> newFilters = batchRequest.getRequests().stream()
+                    .filter(request -> NEW_FILTER_METHODS.contains(request.getMethod()))
+                    .map(Request::getId)
+                    .collect(Collectors.toSet());
+            response.getResponses().stream()
+                    .filter(created -> newFilters.contains(created.getId()))
+                    .forEach(created -> rememberFilter(endpoint, created));
+            return response;
+        });
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        return Async.run(() -> sendBatch(batchRequest));
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod,
+                                                             Class<T> responseType) {
+        return selectRead(null).getTransport().subscribe(request, unsubscribeMethod, responseType);
+    }
+
+    @Override
+    public void close() throws IOException {
+        prober.shutdownNow();
+        hedgeTimer.shutdownNow();
+        hedgeExecutor.shutdownNow();
+        for (RpcEndpoint endpoint : endpoints) {
+            endpoint.getTransport().close();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (RpcEndpoint endpoint : endpoints) {
+            Gauge.builder("web3j.rpc.endpoint.latency", endpoint, RpcEndpoint::getLatencyMillis)
+                    .tag("endpoint", endpoint.getName())
+                    .baseUnit("milliseconds")
+                    .description("Moving average latency of the endpoint")
+                    .register(registry);
+            Gauge.builder("web3j.rpc.endpoint.available", endpoint, e -> e.isAvailable() ? 1 : 0)
+                    .tag("endpoint", endpoint.getName())
+                    .register(registry);
+            FunctionCounter.builder("web3j.rpc.endpoint.selections", endpoint, RpcEndpoint::getSelections)
+                    .tag("endpoint", endpoint.getName())
+                    .description("Requests routed to the endpoint")
+                    .register(registry);
+            FunctionCounter.builder("web3j.rpc.endpoint.failures", endpoint, RpcEndpoint::getFailures)
+                    .tag("endpoint", endpoint.getName())
+                    .register(registry);
+            AdaptiveConcurrencyLimiter limiter = endpoint.getLimiter();
+            Gauge.builder("web3j.rpc.limiter.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                    .tag("endpoint", endpoint.getName())
+                    .description("Current adaptive concurrency limit")
+                    .register(registry);
+            Gauge.builder("web3j.rpc.limiter.in-flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                    .tag("endpoint", endpoint.getName())
+                    .register(registry);
+            Gauge.builder("web3j.rpc.limiter.waiting", limiter, AdaptiveConcurrencyLimiter::getWaiting)
+                    .tag("endpoint", endpoint.getName())
+                    .register(registry);
+            FunctionCounter.builder("web3j.rpc.limiter.rejected", limiter, AdaptiveConcurrencyLimiter::getRejected)
+                    .tag("endpoint", endpoint.getName())
+                    .description("Calls rejected because the endpoint was at its limit")
+                    .register(registry);
+        }
+        FunctionCounter.builder("web3j.rpc.hedge.fired", hedgesFired, AtomicLong::get)
+                .description("Duplicate reads sent to a second endpoint")
+                .register(registry);
+        FunctionCounter.builder("web3j.rpc.hedge.won", hedgesWon, AtomicLong::get)
+                .description("Hedged reads answered first by the second endpoint")
+                .register(registry);
+        FunctionCounter.builder("web3j.rpc.hedge.denied", hedgesDenied, AtomicLong::get)
+                .description("Hedges skipped because the hedge budget was exhausted")
+                .register(registry);
+        Gauge.builder("web3j.rpc.hedge.budget", hedgeBudget, TokenBudget::available)
+                .register(registry);
+    }
+
+    private boolean isHedgeable(String method) {
+        return hedgePolicy != null && hedgePolicy.methods().contains(method) && !WRITE_METHODS.contains(method)
+                && !NEW_FILTER_METHODS.contains(method) && !FILTER_METHODS.contains(method);
+    }
+
+    /**
+     * @return the endpoint that created the filter {@code request} refers to, or {@code null} if
+     * it is not a filter call or the filter is unknown here
+     */
+    private RpcEndpoint filterEndpoint(Request<?, ?> request) {
+        List<?> params = request.getParams();
+        if (!FILTER_METHODS.contains(request.getMethod()) || params == null || params.isEmpty()) {
+            return null;
+        }
+        return filterAffinity.get(filterKey(params.get(0)));
+    }
+
+    private void rememberFilter(RpcEndpoint endpoint, Response<?> created) {
+        if (created != null && !created.hasError() && created.getResult() != null) {
+            filterAffinity.put(filterKey(created.getResult()), endpoint);
+        }
+    }
+
+    /**
+     * web3j parses filter ids into numbers and formats them again, dropping leading zeros, so ids
+     * are compared by value where they are hex quantities.
+     */
+    private static String filterKey(Object id) {
+        String text = String.valueOf(id).toLowerCase();
+        try {
+            return Numeric.toBigInt(text).toString(16);
+        } catch (NumberFormatException e) {
+            return text;
+        }
+    }
+
+    private <R> R withFailover(Function<RpcEndpoint, IoCall<R>> operation) throws IOException {
+        RpcEndpoint primary = selectRead(null);
+        try {
+            return call(primary, operation.apply(primary));
+        } catch (IOException e) {
+            RpcEndpoint fallback = selectRead(primary);
+            if (fallback == null || isCancellation(e)) {
+                throw e;
+            }
+            log.debug("Request failed on {} ({}), retrying on {}", primary, e.getMessage(), fallback);
+            return call(fallback, operation.apply(fallback));
+        }
+    }
+
+    /**
+     * Send to the primary endpoint on the calling thread and, if it has not answered within its
+     * hedge delay, send the same request to a second endpoint on the hedge executor, with the
+     * caller's {@link RpcContext}. The first success wins; a winning hedge interrupts the primary
+     * attempt. A primary that fails while no hedge is running (not yet due, denied by the budget
+     * or the executor) falls back to the second endpoint like a normal failover.
+     */
+    private <R> R hedged(Function<RpcEndpoint, IoCall<R>> operation) throws IOException {
+        RpcEndpoint primary = selectRead(null);
+        RpcEndpoint secondary = selectRead(primary);
+        if (secondary == null) {
+            return call(primary, operation.apply(primary));
+        }
+        hedgeBudget.deposit();
+
+        Hedge<R> hedge = new Hedge<>(Thread.currentThread(), RpcContext.priority(), RpcContext.deadline());
+        ScheduledFuture<?> trigger = hedgeTimer.schedule(() -> hedge.fire(secondary, operation),
+                hedgeDelayNanos(primary), TimeUnit.NANOSECONDS);
+        try {
+            try {
+                return call(primary, operation.apply(primary));
+            } finally {
+                // Whatever the primary throws, so a late hedge never interrupts the caller's next work
+                hedge.primaryDone();
+            }
+        } catch (IOException e) {
+            if (hedge.beatPrimary()) {
+                // Interrupted because the hedge already answered
+                return hedge.result.join();
+            }
+            trigger.cancel(false);
+            if (hedge.fired()) {
+                return ForwardingWeb3jService.await(hedge.result);
+            }
+            if (isCancellation(e)) {
+                throw e;
+            }
+            log.debug("Request failed on {} ({}), retrying on {}", primary, e.getMessage(), secondary);
+            return call(secondary, operation.apply(secondary));
+        } finally {
+            trigger.cancel(false);
+            hedge.cancel();
+        }
+    }
+
+    private long hedgeDelayNanos(RpcEndpoint primary) {
+        return Math.max(hedgePolicy.minDelay().toNanos(), primary.latencyPercentileNanos(hedgePolicy.percentile()));
+    }
+
+    private <R> R call(RpcEndpoint endpoint, IoCall<R> io) throws IOException {
+        AdaptiveConcurrencyLimiter limiter = endpoint.getLimiter();
+        limiter.acquire();
+        endpoint.selected();
+        long start = System.nanoTime();
+        AdaptiveConcurrencyLimiter.Outcome outcome = AdaptiveConcurrencyLimiter.Outcome.IGNORE;
+        try {
+            R result = io.call();
+            endpoint.recordSuccess(System.nanoTime() - start);
+            outcome = AdaptiveConcurrencyLimiter.Outcome.SUCCESS;
+            return result;
+        } catch (IOException e) {
+            if (!isCancellation(e)) {
+                if (isOverload(e)) {
+                    outcome = AdaptiveConcurrencyLimiter.Outcome.OVERLOAD;
+                }
+                onFailure(endpoint, System.nanoTime() - start, e);
+            }
+            throw e;
+        } finally {
+            limiter.release(System.nanoTime() - start, outcome);
+        }
+    }
+
+    private void onFailure(RpcEndpoint endpoint, long elapsedNanos, IOException e) {
+        int consecutive = endpoint.recordFailure(elapsedNanos);
+        if (consecutive >= failureThreshold && endpoint.isAvailable()) {
+            log.warn("Ejecting RPC endpoint {} after {} consecutive failures: {}", endpoint, consecutive, e.getMessage());
+            endpoint.eject(ejectNanos);
+        }
+    }
+
+    /**
+     * Power of two choices over the healthy endpoints, optionally excluding one. When every
+     * endpoint is ejected the best-scoring one is used anyway rather than failing outright.
+     * @return the chosen endpoint, or {@code null} if nothing but {@code exclude} is left
+     */
+    RpcEndpoint selectRead(RpcEndpoint exclude) {
+        List<RpcEndpoint> candidates = endpoints.stream()
+                .filter(e -> e != exclude && e.isAvailable())
+                .toList();
+        if (candidates.isEmpty()) {
+            return endpoints.stream()
+                    .filter(e -> e != exclude)
+                    .min(Comparator.comparingDouble(RpcEndpoint::score))
+                    .orElse(null);
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = (first + 1 + random.nextInt(candidates.size() - 1)) % candidates.size();
+        RpcEndpoint a = candidates.get(first);
+        RpcEndpoint b = candidates.get(second);
+        return a.score() <= b.score() ? a : b;
+    }
+
+    private RpcEndpoint writeEndpoint(Request<?, ?> request) {
+        String sender = senderOf(request);
+        RpcEndpoint current = writeAffinity.get(sender);
+        if (current != null && current.isAvailable()) {
+            return current;
+        }
+        RpcEndpoint chosen = endpoints.stream()
+                .filter(RpcEndpoint::isAvailable)
+                .min(Comparator.comparingDouble(RpcEndpoint::score))
+                .orElse(current != null ? current : endpoints.get(0));
+        if (current != null && chosen != current) {
+            log.warn("Moving writes for {} from unavailable endpoint {} to {}", sender, current, chosen);
+        }
+        writeAffinity.put(sender, chosen);
+        return chosen;
+    }
+
+    private static String senderOf(Request<?, ?> request) {
+        List<?> params = request.getParams();
+        if (params == null || params.isEmpty()) {
+            return "";
+        }
+        Object first = params.get(0);
+        try {
+            if (first instanceof Transaction transaction) {
+                return normalize(transaction.getFrom());
+            }
+            if ("eth_sendRawTransaction".equals(request.getMethod()) && first instanceof String raw) {
+                RawTransaction decoded = TransactionDecoder.decode(raw);
+                if (decoded instanceof SignedRawTransaction signed) {
+                    return normalize(signed.getFrom());
+                }
+                return "";
+            }
+        } catch (Exception e) {
+            log.debug("Could not determine sender of {}: {}", request.getMethod(), e.getMessage());
+            return "";
+        }
+        return first instanceof String address ? normalize(address) : "";
+    }
+
+    private static String normalize(String address) {
+        return address == null ? "" : address.toLowerCase();
+    }
+
+    /**
+     * Timeouts and HTTP 429/503 mean the node is at capacity rather than broken.
+     */
+    private static boolean isOverload(IOException e) {
+        return e instanceof SocketTimeoutException
+                || e instanceof RpcHttpStatusException status && status.isOverload();
+    }
+
+    private static boolean isCancellation(IOException e) {
+        return e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException);
+    }
+
+    private void probeEjected() {
+        long now = System.nanoTime();
+        for (RpcEndpoint endpoint : endpoints) {
+            if (!endpoint.isProbeDue(now)) {
+                continue;
+            }
+            Web3jService transport = endpoint.getTransport();
+            try {
+                EthBlockNumber response = transport.send(
+                        new Request<>("eth_blockNumber", List.<String>of(), transport, EthBlockNumber.class),
+                        EthBlockNumber.class);
+                if (response.hasError()) {
+                    throw new IOException(response.getError().getMessage());
+                }
+                log.info("RPC endpoint {} is healthy again at block {}", endpoint, response.getBlockNumber());
+                endpoint.readmit();
+            } catch (Exception e) {
+                log.debug("Probe of {} failed: {}", endpoint, e.getMessage());
+                endpoint.eject(ejectNanos);
+            }
+        }
+    }
+
+    /**
+     * The second attempt of one hedged read. The primary runs on {@code caller}; {@link #lock}
+     * makes sure the hedge only interrupts it while it is still running, so the interrupt never
+     * leaks into whatever the caller does next.
+     */
+    private final class Hedge<R> {
+
+        final CompletableFuture<R> result = new CompletableFuture<>();
+        private final Thread caller;
+        private final RpcPriority priority;
+        private final Long deadline;
+        private final ReentrantLock lock = new ReentrantLock();
+        private boolean primaryRunning = true;
+        private boolean interruptedPrimary;
+        private Future<?> attempt;
+
+        Hedge(Thread caller, RpcPriority priority, Long deadline) {
+            this.caller = caller;
+            this.priority = priority;
+            this.deadline = deadline;
+        }
+
+        void fire(RpcEndpoint endpoint, Function<RpcEndpoint, IoCall<R>> operation) {
+            lock.lock();
+            try {
+                if (!primaryRunning) {
+                    return;
+                }
+                if (!hedgeBudget.tryWithdraw()) {
+                    hedgesDenied.incrementAndGet();
+                    return;
+                }
+                try {
+                    attempt = hedgeExecutor.submit(() -> run(endpoint, operation));
+                    hedgesFired.incrementAndGet();
+                } catch (RejectedExecutionException e) {
+                    hedgesDenied.incrementAndGet();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean fired() {
+            lock.lock();
+            try {
+                return attempt != null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Stop the hedge from interrupting the caller, and clear the interrupt if it already did.
+         */
+        void primaryDone() {
+            lock.lock();
+            try {
+                primaryRunning = false;
+                if (interruptedPrimary) {
+                    Thread.interrupted();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return whether the primary attempt was interrupted because the hedge won
+         */
+        boolean beatPrimary() {
+            lock.lock();
+            try {
+                return interruptedPrimary;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void cancel() {
+            lock.lock();
+            try {
+                if (attempt != null) {
+                    attempt.cancel(true);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void run(RpcEndpoint endpoint, Function<RpcEndpoint, IoCall<R>> operation) {
+            try {
+                R value = RpcContext.call(priority, deadline, () -> call(endpoint, operation.apply(endpoint)));
+                lock.lock();
+                try {
+                    if (result.complete(value)) {
+                        hedgesWon.incrementAndGet();
+                        if (primaryRunning) {
+                            interruptedPrimary = true;
+                            caller.interrupt();
+                        }
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface TransportCall<R> {
+        R call(Web3jService transport) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface IoCall<R> {
+        R call() throws IOException;
+    }
+}
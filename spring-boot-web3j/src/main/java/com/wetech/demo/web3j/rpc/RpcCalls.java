@@ -0,0 +1,132 @@
+package com.wetech.demo.web3j.rpc;
+
+import org.web3j.protocol.core.RemoteCall;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.tx.response.EmptyTransactionReceipt;
+import org.web3j.tx.response.TransactionReceiptProcessor;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs blocking contract calls and transactions off the request thread, carrying the caller's
+ * {@link RpcContext} along.
+ * <p>
+ * Each {@link RpcWorkload} has its own bounded executor: a backlog of receipt polling cannot take
+ * the threads that serve reads, and a full queue fails the call with
+ * {@link RpcOverloadedException} instead of growing without limit. Transactions are sent with a
+ * transaction manager that does not wait for the receipt; {@link #transact(RemoteCall)} then
+ * waits for it on the receipt executor.
+ * <p>
+ * If the caller has a deadline, the returned future fails with
+ * {@link RpcDeadlineExceededException} once it passes and the worker thread is interrupted. That
+ * cancels the in-flight HTTP exchange or queue wait and stops receipt polling, so an expired
+ * request releases its resources instead of running to completion in the background.
+ */
+public class RpcCalls implements AutoCloseable {
+
+    private final Map<RpcWorkload, ExecutorService> executors;
+    private final ScheduledExecutorService timer;
+    private final TransactionReceiptProcessor receiptProcessor;
+
+    public RpcCalls(Map<RpcWorkload, ExecutorService> executors, ScheduledExecutorService timer,
+                    TransactionReceiptProcessor receiptProcessor) {
+        this.executors = Map.copyOf(executors);
+        this.timer = timer;
+        this.receiptProcessor = receiptProcessor;
+    }
+
+    /**
+     * Send a contract call in the given lane, on the executor of the matching workload.
+     */
+    public <T> CompletableFuture<T> send(RpcPriority priority, RemoteCall<T> remoteCall) {
+        return submit(priority, remoteCall::send);
+    }
+
+    /**
+     * Run arbitrary blocking RPC work in the given lane, on the executor of the matching workload.
+     */
+    public <T> CompletableFuture<T> submit(RpcPriority priority, Callable<T> work) {
+        return submit(workloadOf(priority), priority, RpcContext.deadline(), work);
+    }
+
+    /**
+     * Run blocking RPC work in the given lane on the executor of {@code workload}, with the given
+     * deadline instead of the caller's, e.g. for work done on behalf of several callers.
+     *
+     * @param deadline {@link System#nanoTime()} by which the work must complete, or {@code null}
+     */
+    public <T> CompletableFuture<T> submit(RpcWorkload workload, RpcPriority priority, Long deadline,
+                                           Callable<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task;
+        try {
+            task = executors.get(workload).submit(() -> {
+                try {
+                    result.complete(RpcContext.call(priority, deadline, work));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(
+                    new RpcOverloadedException("No capacity left for " + workload.name().toLowerCase() + " work"));
+        }
+        if (deadline != null) {
+            ScheduledFuture<?> expiry = timer.schedule(() -> {
+                if (result.completeExceptionally(new RpcDeadlineExceededException("Request deadline exceeded"))) {
+                    task.cancel(true);
+                }
+            }, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            result.whenComplete((value, error) -> expiry.cancel(false));
+        }
+        return result;
+    }
+
+    /**
+     * Send a transaction and wait for its receipt, each step on its own executor. The deadline
+     * of the caller covers both.
+     */
+    public CompletableFuture<TransactionReceipt> transact(RemoteCall<TransactionReceipt> transaction) {
+        Long deadline = RpcContext.deadline();
+        return submit(RpcWorkload.SUBMISSION, RpcPriority.TRANSACTION, deadline, transaction::send)
+                .thenCompose(submitted -> submit(RpcWorkload.RECEIPT, RpcPriority.TRANSACTION, deadline,
+                        () -> awaitReceipt(submitted)));
+    }
+
+    public ExecutorService executor(RpcWorkload workload) {
+        return executors.get(workload);
+    }
+
+    @Override
+    public void close() {
+        executors.values().forEach(ExecutorService::shutdownNow);
+        timer.shutdownNow();
+    }
+
+    private TransactionReceipt awaitReceipt(TransactionReceipt submitted) throws Exception {
+        if (!(submitted instanceof EmptyTransactionReceipt)) {
+            // The contract's transaction manager already waited
+            return submitted;
+        }
+        return receiptProcessor.waitForTransactionReceipt(submitted.getTransactionHash());
+    }
+
+    /**
+     * @return the executor work in the {@code priority} lane runs on by default
+     */
+    public static RpcWorkload workloadOf(RpcPriority priority) {
+        return switch (priority) {
+            case TRANSACTION -> RpcWorkload.SUBMISSION;
+            case INTERACTIVE -> RpcWorkload.READ;
+            case BACKGROUND -> RpcWorkload.BACKGROUND;
+        };
+    }
+}
@@ -0,0 +1,81 @@
+package com.wetech.demo.web3j.rpc;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Per-call context, carried on the calling thread down to the {@code Web3jService} chain: the
+ * {@link RpcPriority} lane and the deadline of the API request the call belongs to.
+ * <p>
+ * web3j's own {@code sendAsync()} hops to its async pool and loses thread-local state, so
+ * services issue contract calls through {@link RpcCalls}, which re-installs the context on the
+ * worker thread.
+ */
+public final class RpcContext {
+
+    private static final ThreadLocal<RpcPriority> PRIORITY = new ThreadLocal<>();
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+    private RpcContext() {
+    }
+
+    /**
+     * @return the priority of calls made by the current thread; untagged calls are interactive
+     */
+    public static RpcPriority priority() {
+        RpcPriority priority = PRIORITY.get();
+        return priority != null ? priority : RpcPriority.INTERACTIVE;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} by which calls of the current thread must complete,
+     * or {@code null} if there is none
+     */
+    public static Long deadline() {
+        return DEADLINE.get();
+    }
+
+    public static void setDeadline(Long deadlineNanos) {
+        if (deadlineNanos != null) {
+            DEADLINE.set(deadlineNanos);
+        } else {
+            DEADLINE.remove();
+        }
+    }
+
+    /**
+     * Fail fast instead of starting a call whose result nobody will wait for.
+     */
+    public static void checkDeadline() throws RpcDeadlineExceededException {
+        Long deadline = DEADLINE.get();
+        if (deadline != null && deadline - System.nanoTime() <= 0) {
+            throw new RpcDeadlineExceededException("Request deadline exceeded");
+        }
+    }
+
+    /**
+     * Run {@code work} on the current thread in the {@code priority} lane, keeping its deadline.
+     */
+    public static <T> T call(RpcPriority priority, Callable<T> work) throws Exception {
+        return call(priority, DEADLINE.get(), work);
+    }
+
+    /**
+     * Run {@code work} on the current thread with the given context installed.
+     */
+    public static <T> T call(RpcPriority priority, Long deadlineNanos, Callable<T> work) throws Exception {
+        RpcPriority previousPriority = PRIORITY.get();
+        Long previousDeadline = DEADLINE.get();
+        PRIORITY.set(priority);
+        setDeadline(deadlineNanos);
+        try {
+            return work.call();
+        } finally {
+            if (previousPriority != null) {
+                PRIORITY.set(previousPriority);
+            } else {
+                PRIORITY.remove();
+            }
+            setDeadline(previousDeadline);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.wetech.demo.web3j.rpc;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the deadline of the API request an RPC call belongs to has passed. Controllers map
+ * it to {@code 504 Gateway Timeout}.
+ */
+public class RpcDeadlineExceededException extends IOException {
+
+    public RpcDeadlineExceededException(String message) {
+        super(message);
+    }
+
+    /**
+     * @return whether {@code throwable} or any of its causes is an {@code RpcDeadlineExceededException}
+     */
+    public static boolean causedBy(Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            if (t instanceof RpcDeadlineExceededException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
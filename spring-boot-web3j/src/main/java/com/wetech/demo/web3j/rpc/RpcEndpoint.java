@@ -0,0 +1,163 @@
+package com.wetech.demo.web3j.rpc;
+
+import org.web3j.protocol.Web3jService;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One node behind the RPC pool, with the health and latency statistics used to route to it.
+ * <p>
+ * Latency and error rate are tracked as exponentially weighted moving averages, so the score
+ * follows the node's recent behaviour rather than its lifetime average.
+ */
+public class RpcEndpoint {
+
+    /** Weight of the newest sample in the moving averages. */
+    private static final double ALPHA = 0.2;
+
+    /** How strongly a recent error rate inflates the latency-based score. */
+    private static final double ERROR_PENALTY = 10.0;
+
+    /** Recent successful latencies kept for percentile estimates. */
+    private static final int LATENCY_SAMPLES = 256;
+
+    private final String name;
+    private final Web3jService transport;
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    private final AtomicLong selections = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final long[] latencySamples = new long[LATENCY_SAMPLES];
+    private int sampleCount;
+    private int nextSample;
+
+    private double latencyMillis;
+    private double errorRate;
+    private int consecutiveFailures;
+    private long ejectedUntilNanos;
+    private boolean ejected;
+
+    public RpcEndpoint(String name, Web3jService transport, AdaptiveConcurrencyLimiter limiter) {
+        this.name = name;
+        this.transport = transport;
+        this.limiter = limiter;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Web3jService getTransport() {
+        return transport;
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    void selected() {
+        selections.incrementAndGet();
+    }
+
+    synchronized void recordSuccess(long elapsedNanos) {
+        double millis = elapsedNanos / 1_000_000.0;
+        latencyMillis = latencyMillis == 0 ? millis : ALPHA * millis + (1 - ALPHA) * latencyMillis;
+        errorRate = (1 - ALPHA) * errorRate;
+        consecutiveFailures = 0;
+        latencySamples[nextSample] = elapsedNanos;
+        nextSample = (nextSample + 1) % LATENCY_SAMPLES;
+        sampleCount = Math.min(sampleCount + 1, LATENCY_SAMPLES);
+    }
+
+    /**
+     * @param percentile between 0 and 1, e.g. 0.95
+     * @return the given percentile of recent successful latencies, or 0 without samples
+     */
+    synchronized long latencyPercentileNanos(double percentile) {
+        int n = sampleCount;
+        if (n == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencySamples, n);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * n) - 1;
+        return sorted[Math.max(0, Math.min(n - 1, index))];
+    }
+
+    /**
+     * @return the number of consecutive failures including this one
+     */
+    synchronized int recordFailure(long elapsedNanos) {
+        failures.incrementAndGet();
+        double millis = elapsedNanos / 1_000_000.0;
+        latencyMillis = Math.max(latencyMillis, ALPHA * millis + (1 - ALPHA) * latencyMillis);
+        errorRate = ALPHA + (1 - ALPHA) * errorRate;
+        return ++consecutiveFailures;
+    }
+
+    /**
+     * Routing score; lower is better. Endpoints without samples yet score 0 so they get tried.
+     */
+    synchronized double score() {
+        return latencyMillis * (1 + ERROR_PENALTY * errorRate);
+    }
+
+    synchronized boolean isAvailable() {
+        return !ejected;
+    }
+
+    synchronized boolean isProbeDue(long nowNanos) {
+        return ejected && nowNanos - ejectedUntilNanos >= 0;
+    }
+
+    synchronized void eject(long durationNanos) {
+        ejected = true;
+        ejectedUntilNanos = System.nanoTime() + durationNanos;
+    }
+
+    synchronized void readmit() {
+        ejected = false;
+        consecutiveFailures = 0;
+        errorRate = errorRate / 2;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        stats.put("available", !ejected);
+        stats.put("latencyMillis", Math.round(latencyMillis * 100) / 100.0);
+        stats.put("errorRate", Math.round(errorRate * 1000) / 1000.0);
+        stats.put("score", Math.round(score() * 100) / 100.0);
+        stats.put("selections", selections.get());
+        stats.put("failures", failures.get());
+        stats.put("concurrencyLimit", limiter.getLimit());
+        stats.put("inFlight", limiter.getInFlight());
+        stats.put("waiting", limiter.getWaiting());
+        stats.put("rejected", limiter.getRejected());
+        if (ejected) {
+            stats.put("probeInMillis", Math.max(0, TimeUnit.NANOSECONDS.toMillis(ejectedUntilNanos - System.nanoTime())));
+        }
+        return stats;
+    }
+
+    public long getSelections() {
+        return selections.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public synchronized double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,36 @@
+package com.wetech.demo.web3j.rpc;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link PooledHttpService} when the node answers with a non-2xx HTTP status, so the
+ * routing, retry and limiter layers can tell back-pressure (429/503) and gateway errors apart from
+ * other transport failures by type rather than by message text.
+ */
+public class RpcHttpStatusException extends IOException {
+
+    private final int status;
+
+    public RpcHttpStatusException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return whether the node signalled that it is at capacity
+     */
+    public boolean isOverload() {
+        return status == 429 || status == 503;
+    }
+
+    /**
+     * @return whether the same request may succeed if sent again: overload or a gateway error
+     */
+    public boolean isTransient() {
+        return isOverload() || status == 502 || status == 504;
+    }
+}
@@ -0,0 +1,26 @@
+package com.wetech.demo.web3j.rpc;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an RPC call cannot be admitted because the node is already at its concurrency
+ * limit. Controllers map it to {@code 503 Service Unavailable}.
+ */
+public class RpcOverloadedException extends IOException {
+
+    public RpcOverloadedException(String message) {
+        super(message);
+    }
+
+    /**
+     * @return whether {@code throwable} or any of its causes is an {@code RpcOverloadedException}
+     */
+    public static boolean causedBy(Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            if (t instanceof RpcOverloadedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,29 @@
+package com.wetech.demo.web3j.rpc;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Actuator endpoint ({@code /actuator/rpcpool}) listing the latency, error rate and selection
+ * count of every RPC endpoint in the pool.
+ */
+@Endpoint(id = "rpcpool")
+public class RpcPoolEndpoint {
+
+    private final RoutingWeb3jService router;
+
+    public RpcPoolEndpoint(RoutingWeb3jService router) {
+        this.router = router;
+    }
+
+    @ReadOperation
+    public Map<String, Object> pool() {
+        List<Map<String, Object>> endpoints = router.getEndpoints().stream()
+                .map(RpcEndpoint::stats)
+                .toList();
+        return Map.of("endpoints", endpoints);
+    }
+}
@@ -0,0 +1,13 @@
+package com.wetech.demo.web3j.rpc;
+
+/**
+ * Scheduling lane of an RPC call, see {@link PriorityScheduler}.
+ */
+public enum RpcPriority {
+    /** Transaction submission and the receipt polling that follows it. */
+    TRANSACTION,
+    /** Reads on behalf of a waiting API client. */
+    INTERACTIVE,
+    /** Scans, backfills and other work nobody is waiting on. */
+    BACKGROUND
+}
@@ -0,0 +1,20 @@
+package com.wetech.demo.web3j.rpc;
+
+/**
+ * Kind of blocking RPC work, each with its own bounded executor in {@link RpcCalls} so one
+ * workload cannot exhaust the threads of another.
+ */
+public enum RpcWorkload {
+    /** Contract reads on behalf of API clients. */
+    READ,
+    /** Signing and sending transactions (and deployments). */
+    SUBMISSION,
+    /** Polling for the receipt of a submitted transaction. */
+    RECEIPT,
+    /** Chain head and contract event delivery, which keeps caches and subscribers current. */
+    EVENTS,
+    /** Log scans, reconciliations and other reads nobody is waiting on. */
+    BACKGROUND,
+    /** Chunks of bulk reads streamed back to a client, so a large export cannot starve the others. */
+    BULK
+}
@@ -0,0 +1,128 @@
+package com.wetech.demo.web3j.rpc;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collapses concurrent identical read requests into one outstanding RPC call.
+ * <p>
+ * Requests are keyed by method and canonical JSON parameters, which for {@code eth_call}
+ * includes the target, calldata and block tag. The first caller for a key performs the call;
+ * callers arriving while it is in flight share its response. Nothing is cached once the call
+ * completes.
+ * <p>
+ * The key also includes the caller's {@link RpcPriority}, so a caller only ever waits on a call
+ * admitted in its own lane. A leader that fails because of its own deadline or cancellation
+ * says nothing about the request, so a follower that still has time sends it itself.
+ */
+@Slf4j
+public class SingleFlightWeb3jService extends ForwardingWeb3jService {
+
+    private final ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+    private final Set<String> methods;
+    private final Map<String, CompletableFuture<Response<?>>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter leaders;
+    private final Counter collapsed;
+
+    public SingleFlightWeb3jService(Web3jService delegate, Set<String> methods, MeterRegistry meterRegistry) {
+        super(delegate);
+        this.methods = Set.copyOf(methods);
+        this.leaders = Counter.builder("web3j.rpc.singleflight.leaders")
+                .description("Read requests actually sent downstream")
+                .register(meterRegistry);
+        this.collapsed = Counter.builder("web3j.rpc.singleflight.collapsed")
+                .description("Read requests answered by an identical in-flight call")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        String key = keyOf(request);
+        if (key == null) {
+            return delegate.send(request, responseType);
+        }
+
+        CompletableFuture<Response<?>> call = new CompletableFuture<>();
+        CompletableFuture<Response<?>> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            collapsed.increment();
+            try {
+                // Wait on a copy, so an interrupted follower cannot cancel the shared call
+                return responseType.cast(await(existing.thenApply(response -> response)));
+            } catch (RpcDeadlineExceededException | InterruptedIOException e) {
+                // The leader ran out of time or was cancelled, not necessarily this caller
+                if (e instanceof SocketTimeoutException || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                RpcContext.checkDeadline();
+                return delegate.send(request, responseType);
+            }
+        }
+
+        leaders.increment();
+        try {
+            T response = delegate.send(request, responseType);
+            call.complete(response);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        String key = keyOf(request);
+        if (key == null) {
+            return delegate.sendAsync(request, responseType);
+        }
+
+        CompletableFuture<Response<?>> call = new CompletableFuture<>();
+        CompletableFuture<Response<?>> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            collapsed.increment();
+            return existing.thenApply(responseType::cast);
+        }
+
+        leaders.increment();
+        return delegate.sendAsync(request, responseType).whenComplete((response, error) -> {
+            inFlight.remove(key, call);
+            if (error != null) {
+                call.completeExceptionally(error);
+            } else {
+                call.complete(response);
+            }
+        });
+    }
+
+    private String keyOf(Request<?, ?> request) {
+        if (!methods.contains(request.getMethod())) {
+            return null;
+        }
+        try {
+            return RpcContext.priority() + ":" + request.getMethod() + ":"
+                    + objectMapper.writeValueAsString(request.getParams());
+        } catch (JsonProcessingException e) {
+            log.debug("Cannot build single-flight key for {}: {}", request.getMethod(), e.getMessage());
+            return null;
+        }
+    }
+}
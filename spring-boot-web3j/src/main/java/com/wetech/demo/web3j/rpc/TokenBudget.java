@@ -0,0 +1,37 @@
+package com.wetech.demo.web3j.rpc;
+
+/**
+ * Caps optional extra work (hedges, retries) at a fraction of regular traffic.
+ * <p>
+ * Every regular request deposits {@code ratio} tokens, every extra request withdraws a whole
+ * one. The balance is capped so a quiet period cannot bank an unbounded burst; it starts full so
+ * the first requests after startup are not starved.
+ */
+public class TokenBudget {
+
+    private final double ratio;
+    private final double maxTokens;
+    private double tokens;
+
+    public TokenBudget(double ratio, double maxTokens) {
+        this.ratio = ratio;
+        this.maxTokens = maxTokens;
+        this.tokens = maxTokens;
+    }
+
+    public synchronized void deposit() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    public synchronized boolean tryWithdraw() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    public synchronized double available() {
+        return tokens;
+    }
+}
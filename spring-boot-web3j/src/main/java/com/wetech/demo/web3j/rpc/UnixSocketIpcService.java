@@ -0,0 +1,162 @@
+package com.wetech.demo.web3j.rpc;
+
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * JSON-RPC over the node's IPC socket using Java's native Unix domain socket channels.
+ * <p>
+ * Unlike web3j's {@code UnixIpcService}, which serialises every call over one socket, this keeps
+ * a small pool of connections so concurrent calls (and the batches built by
+ * {@link BatchingWeb3jService}) proceed in parallel. Each connection carries one request at a
+ * time; the response is framed by tracking JSON nesting, since the IPC protocol has no length
+ * prefix. Interrupting a caller closes its connection, which aborts the read.
+ */
+@Slf4j
+public class UnixSocketIpcService extends Service {
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private final UnixDomainSocketAddress address;
+    private final Semaphore permits;
+    private final BlockingQueue<SocketChannel> idle;
+
+    public UnixSocketIpcService(String path, int maxConnections) {
+        super(false);
+        this.address = UnixDomainSocketAddress.of(Path.of(path));
+        this.permits = new Semaphore(maxConnections);
+        this.idle = new ArrayBlockingQueue<>(maxConnections);
+    }
+
+    @Override
+    protected InputStream performIO(String payload) throws IOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an IPC connection");
+        }
+        SocketChannel channel = null;
+        boolean reusable = false;
+        try {
+            channel = idle.poll();
+            if (channel == null || !channel.isOpen()) {
+                channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+                channel.connect(address);
+            }
+            write(channel, payload);
+            byte[] response = readMessage(channel);
+            reusable = true;
+            return new ByteArrayInputStream(response);
+        } catch (ClosedByInterruptException e) {
+            throw new InterruptedIOException("IPC call interrupted");
+        } finally {
+            if (channel != null) {
+                if (reusable) {
+                    idle.offer(channel);
+                } else {
+                    closeQuietly(channel);
+                }
+            }
+            permits.release();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        SocketChannel channel;
+        while ((channel = idle.poll()) != null) {
+            closeQuietly(channel);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ipc:" + address.getPath();
+    }
+
+    private static void write(SocketChannel channel, String payload) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(payload.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Read exactly one top-level JSON value (object or batch array). Whitespace around it, such as
+     * the newline geth appends, is skipped.
+     */
+    private static byte[] readMessage(SocketChannel channel) throws IOException {
+        ByteArrayOutputStream message = new ByteArrayOutputStream(READ_BUFFER_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        int depth = 0;
+        boolean started = false;
+        boolean inString = false;
+        boolean escaped = false;
+        while (true) {
+            buffer.clear();
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("IPC connection closed by node");
+            }
+            buffer.flip();
+            int start = buffer.position();
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (!started) {
+                    if (b == '{' || b == '[') {
+                        started = true;
+                        start = buffer.position() - 1;
+                    } else {
+                        continue;
+                    }
+                }
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == '"') {
+                        inString = false;
+                    }
+                } else if (b == '"') {
+                    inString = true;
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    if (--depth == 0) {
+                        message.write(buffer.array(), start, buffer.position() - start);
+                        return message.toByteArray();
+                    }
+                }
+            }
+            if (started) {
+                message.write(buffer.array(), start, buffer.limit() - start);
+            }
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Failed to close IPC connection: {}", e.getMessage());
+        }
+    }
+}
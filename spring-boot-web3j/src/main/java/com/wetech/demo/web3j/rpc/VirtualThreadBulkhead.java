@@ -0,0 +1,157 @@
+package com.wetech.demo.web3j.rpc;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor that starts a virtual thread per task and bounds them with a bulkhead instead of a
+ * pool: at most {@code maxConcurrency} tasks run at once, up to {@code queueCapacity} more wait
+ * parked (costing no platform thread), and anything beyond is rejected.
+ * <p>
+ * Publishes the {@code executor.*} meters that {@code ExecutorServiceMetrics} publishes for a
+ * thread pool, under the same {@code name} tag, so both execution modes show on one dashboard.
+ * The pool size is the number of admitted tasks, each of which has a virtual thread.
+ */
+public class VirtualThreadBulkhead extends AbstractExecutorService implements MeterBinder {
+
+    private final String name;
+    private final int maxConcurrency;
+    private final ExecutorService threads;
+    private final Semaphore running;
+    private final Semaphore admitted;
+    private final int capacity;
+    private final AtomicLong completed = new AtomicLong();
+
+    public VirtualThreadBulkhead(String name, int maxConcurrency, int queueCapacity) {
+        this.name = name;
+        this.maxConcurrency = maxConcurrency;
+        this.capacity = maxConcurrency + queueCapacity;
+        this.threads = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+        this.running = new Semaphore(maxConcurrency);
+        this.admitted = new Semaphore(capacity);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!admitted.tryAcquire()) {
+            throw new RejectedExecutionException(name + " is full: " + capacity + " tasks admitted");
+        }
+        try {
+            threads.execute(() -> run(task));
+        } catch (RejectedExecutionException e) {
+            admitted.release();
+            throw e;
+        }
+    }
+
+    private void run(Runnable task) {
+        try {
+            running.acquire();
+        } catch (InterruptedException e) {
+            // Cancelled while waiting for a turn
+            admitted.release();
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            task.run();
+        } finally {
+            running.release();
+            admitted.release();
+            completed.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Tags tags = Tags.of("name", name.replace('-', '.'));
+        FunctionCounter.builder("executor.completed", completed, AtomicLong::get)
+                .tags(tags)
+                .description("The approximate total number of tasks that have completed execution")
+                .baseUnit("tasks")
+                .register(registry);
+        Gauge.builder("executor.active", this, VirtualThreadBulkhead::getActive)
+                .tags(tags)
+                .description("The approximate number of threads that are actively executing tasks")
+                .baseUnit("threads")
+                .register(registry);
+        Gauge.builder("executor.queued", this, VirtualThreadBulkhead::getQueued)
+                .tags(tags)
+                .description("The approximate number of tasks that are queued for execution")
+                .baseUnit("tasks")
+                .register(registry);
+        Gauge.builder("executor.queue.remaining", admitted, Semaphore::availablePermits)
+                .tags(tags)
+                .description("The number of additional elements that this queue can ideally accept without blocking")
+                .baseUnit("tasks")
+                .register(registry);
+        Gauge.builder("executor.pool.size", this, VirtualThreadBulkhead::getPoolSize)
+                .tags(tags)
+                .description("The current number of threads in the pool")
+                .baseUnit("threads")
+                .register(registry);
+        Gauge.builder("executor.pool.core", this, bulkhead -> bulkhead.maxConcurrency)
+                .tags(tags)
+                .description("The core number of threads for the pool")
+                .baseUnit("threads")
+                .register(registry);
+        Gauge.builder("executor.pool.max", this, bulkhead -> bulkhead.maxConcurrency)
+                .tags(tags)
+                .description("The maximum allowed number of threads in the pool")
+                .baseUnit("threads")
+                .register(registry);
+    }
+
+    public int getActive() {
+        return maxConcurrency - running.availablePermits();
+    }
+
+    public int getQueued() {
+        return Math.max(0, getPoolSize() - getActive());
+    }
+
+    public int getPoolSize() {
+        return capacity - admitted.availablePermits();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    @Override
+    public void shutdown() {
+        threads.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return threads.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return threads.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return threads.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return threads.awaitTermination(timeout, unit);
+    }
+}
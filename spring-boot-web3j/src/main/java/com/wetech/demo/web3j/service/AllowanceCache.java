@@ -0,0 +1,104 @@
+package com.wetech.demo.web3j.service;
+
+import com.wetech.demo.web3j.contracts.erc20test.ERC20Test;
+import com.wetech.demo.web3j.rpc.LogStreamReader;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.web3j.abi.EventEncoder;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * ERC20 allowances keyed by (contract, owner, spender), fed by {@code Approval} logs.
+ * <p>
+ * An {@code Approval} carries the new allowance, so it is stored directly. {@code transferFrom}
+ * lowers the allowance without emitting one, so a {@code Transfer} from an owner drops every
+ * allowance of that owner, unless a later {@code Approval} in the same blocks sets it again.
+ */
+@Service
+public class AllowanceCache extends HeadScopedCache<AllowanceCache.AllowanceKey, BigInteger> {
+
+    private static final String APPROVAL_TOPIC = EventEncoder.encode(ERC20Test.APPROVAL_EVENT);
+    private static final String TRANSFER_TOPIC = EventEncoder.encode(ERC20Test.TRANSFER_EVENT);
+
+    public AllowanceCache(LogStreamReader logStreamReader, ChainHeadTracker headTracker, MeterRegistry meterRegistry,
+                          @Value("${web3j.cache.allowance.enabled:true}") boolean enabled,
+                          @Value("${web3j.cache.allowance.max-size:100000}") long maxSize,
+                          @Value("${web3j.cache.max-invalidation-range:128}") long maxInvalidationRange) {
+        super("erc20.allowance", logStreamReader, headTracker, meterRegistry, enabled, maxSize, maxInvalidationRange);
+    }
+
+    /**
+     * @param loader         reads the allowance at the given block, or at latest when given {@code null}
+     * @param maxStaleBlocks how many blocks behind the head a value may be to be served immediately
+     */
+    public CompletableFuture<BlockValue<BigInteger>> read(String contractAddress, String owner, String spender,
+                                                          Function<BigInteger, CompletableFuture<BigInteger>> loader,
+                                                          long maxStaleBlocks) {
+        return read(new AllowanceKey(contractAddress.toLowerCase(), owner.toLowerCase(), spender.toLowerCase()),
+                loader, maxStaleBlocks);
+    }
+
+    @Override
+    protected String contractOf(AllowanceKey key) {
+        return key.contract();
+    }
+
+    @Override
+    protected List<String> topics() {
+        return List.of(APPROVAL_TOPIC, TRANSFER_TOPIC);
+    }
+
+    @Override
+    protected Runnable updateFor(List<Log> logs) {
+        // null marks an allowance that was spent after its last Approval
+        Map<AllowanceKey, BigInteger> approved = new HashMap<>();
+        Set<OwnerKey> spentOwners = new HashSet<>();
+        for (Log log : logs) {
+            String contract = log.getAddress().toLowerCase();
+            String topic = log.getTopics().isEmpty() ? null : log.getTopics().get(0);
+            if (APPROVAL_TOPIC.equals(topic)) {
+                ERC20Test.ApprovalEventResponse event = ERC20Test.getApprovalEventFromLog(log);
+                approved.put(new AllowanceKey(contract, event.owner.toLowerCase(), event.spender.toLowerCase()),
+                        event.value);
+            } else if (TRANSFER_TOPIC.equals(topic)) {
+                OwnerKey owner = new OwnerKey(contract, ERC20Test.getTransferEventFromLog(log).from.toLowerCase());
+                spentOwners.add(owner);
+                approved.replaceAll((key, value) -> owner.equals(key.ownerKey()) ? null : value);
+            }
+        }
+        return () -> {
+            if (!spentOwners.isEmpty()) {
+                invalidate(cache.asMap().keySet().stream()
+                        .filter(key -> spentOwners.contains(key.ownerKey()))
+                        .toList());
+            }
+            approved.forEach((key, value) -> {
+                if (value != null) {
+                    cache.synchronous().put(key, value);
+                } else {
+                    invalidate(List.of(key));
+                }
+            });
+        };
+    }
+
+    record AllowanceKey(String contract, String owner, String spender) {
+
+        OwnerKey ownerKey() {
+            return new OwnerKey(contract, owner);
+        }
+    }
+
+    private record OwnerKey(String contract, String owner) {
+    }
+}
@@ -0,0 +1,79 @@
+package com.wetech.demo.web3j.service;
+
+import com.wetech.demo.web3j.contracts.erc20test.ERC20Test;
+import com.wetech.demo.web3j.rpc.LogStreamReader;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.web3j.abi.EventEncoder;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * ERC20 balances keyed by (contract, account); a {@code Transfer} touching the account in a new
+ * block drops the entry. Once a head is applied, {@link PendingEffectsOverlay} drops the effects
+ * that reads at it include.
+ */
+@Service
+public class BalanceCache extends HeadScopedCache<BalanceCache.BalanceKey, BigInteger> {
+
+    private static final String TRANSFER_TOPIC = EventEncoder.encode(ERC20Test.TRANSFER_EVENT);
+
+    private final PendingEffectsOverlay pendingEffects;
+
+    public BalanceCache(LogStreamReader logStreamReader, ChainHeadTracker headTracker, MeterRegistry meterRegistry,
+                        PendingEffectsOverlay pendingEffects,
+                        @Value("${web3j.cache.balance.enabled:true}") boolean enabled,
+                        @Value("${web3j.cache.balance.max-size:100000}") long maxSize,
+                        @Value("${web3j.cache.max-invalidation-range:128}") long maxInvalidationRange) {
+        super("erc20.balance", logStreamReader, headTracker, meterRegistry, enabled, maxSize, maxInvalidationRange);
+        this.pendingEffects = pendingEffects;
+    }
+
+    /**
+     * @param loader         reads the balance at the given block, or at latest when given {@code null}
+     * @param maxStaleBlocks how many blocks behind the head a value may be to be served immediately
+     */
+    public CompletableFuture<BlockValue<BigInteger>> read(String contractAddress, String account,
+                                                          Function<BigInteger, CompletableFuture<BigInteger>> loader,
+                                                          long maxStaleBlocks) {
+        return read(new BalanceKey(contractAddress.toLowerCase(), account.toLowerCase()), loader, maxStaleBlocks);
+    }
+
+    @Override
+    public void onHead(BigInteger head) {
+        super.onHead(head);
+        pendingEffects.onHeadApplied(head);
+    }
+
+    @Override
+    protected String contractOf(BalanceKey key) {
+        return key.contract();
+    }
+
+    @Override
+    protected List<String> topics() {
+        return List.of(TRANSFER_TOPIC);
+    }
+
+    @Override
+    protected Runnable updateFor(List<Log> logs) {
+        Set<BalanceKey> touched = new HashSet<>();
+        for (Log transfer : logs) {
+            ERC20Test.TransferEventResponse event = ERC20Test.getTransferEventFromLog(transfer);
+            String contract = transfer.getAddress().toLowerCase();
+            touched.add(new BalanceKey(contract, event.from.toLowerCase()));
+            touched.add(new BalanceKey(contract, event.to.toLowerCase()));
+        }
+        return () -> invalidate(touched);
+    }
+
+    record BalanceKey(String contract, String account) {
+    }
+}
@@ -0,0 +1,10 @@
+package com.wetech.demo.web3j.service;
+
+import java.math.BigInteger;
+
+/**
+ * A value read from the chain, with the block it is known to be valid at ({@code null} when it
+ * was read at latest without a tracked head).
+ */
+public record BlockValue<V>(V value, BigInteger blockNumber) {
+}
@@ -0,0 +1,214 @@
+package com.wetech.demo.web3j.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wetech.demo.web3j.rpc.RpcPriority;
+import com.wetech.demo.web3j.rpc.RpcWorkload;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.web3j.crypto.WalletUtils;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Balances of an unbounded stream of addresses at one block, written back as NDJSON.
+ * <p>
+ * Addresses are read incrementally, either as a JSON array or as newline-delimited JSON (strings
+ * or objects with an {@code address} field), and grouped into chunks of {@code chunkSize}. Each
+ * chunk becomes one batch of storage reads, or one aggregate call for tokens whose storage layout
+ * is unknown (see {@link StorageSlotReader}), run on the {@link RpcWorkload#BULK} executor. At
+ * most {@code concurrency} chunks are in flight and reading pauses until the oldest completes, so
+ * memory stays bounded by {@code chunkSize * concurrency} addresses whatever the size of the
+ * input. Results are written chunk by chunk in input order, on the calling thread only.
+ */
+@Slf4j
+@Service
+public class BulkBalanceReader {
+
+    private final Web3j web3j;
+    private final ChainHeadTracker headTracker;
+    private final StorageSlotReader storageSlotReader;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+    private final int concurrency;
+
+    public BulkBalanceReader(Web3j web3j, ChainHeadTracker headTracker, StorageSlotReader storageSlotReader,
+                             ObjectMapper objectMapper,
+                             @Value("${web3j.bulk.chunk-size:500}") int chunkSize,
+                             @Value("${web3j.bulk.concurrency:4}") int concurrency) {
+        this.web3j = web3j;
+        this.headTracker = headTracker;
+        this.storageSlotReader = storageSlotReader;
+        this.objectMapper = objectMapper;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * @return the tracked head, or the node's current block number while the head is unknown
+     */
+    public BigInteger headBlock() throws IOException {
+        BigInteger head = headTracker.head();
+        if (head != null) {
+            return head;
+        }
+        EthBlockNumber response = web3j.ethBlockNumber().send();
+        if (response.hasError()) {
+            throw new IOException("eth_blockNumber failed: " + response.getError().getMessage());
+        }
+        return response.getBlockNumber();
+    }
+
+    /**
+     * @return the number of addresses answered
+     * @throws IOException if the input is malformed or the client went away
+     */
+    public long stream(String contractAddress, BigInteger block, InputStream addresses, OutputStream ndjson)
+            throws IOException {
+        Output output = new Output(ndjson);
+        Deque<Chunk> inFlight = new ArrayDeque<>(concurrency);
+        List<String> chunk = new ArrayList<>(chunkSize);
+        try (JsonParser parser = objectMapper.getFactory().createParser(addresses)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                String address = switch (token) {
+                    case VALUE_STRING -> parser.getText();
+                    case START_OBJECT -> {
+                        JsonNode node = objectMapper.readTree(parser);
+                        yield node.path("address").asText(null);
+                    }
+                    // The enclosing array of the JSON form
+                    case START_ARRAY, END_ARRAY -> null;
+                    default -> throw new IOException("Expected an address but found " + token);
+                };
+                if (address == null) {
+                    continue;
+                }
+                // Invalid addresses keep their place in the chunk, so their error lines stay in input order
+                chunk.add(address);
+                if (chunk.size() == chunkSize) {
+                    submit(contractAddress, block, chunk, inFlight, output);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            submit(contractAddress, block, chunk, inFlight, output);
+        }
+        while (!inFlight.isEmpty()) {
+            output.chunk(await(inFlight.poll()));
+        }
+        return output.written;
+    }
+
+    /**
+     * Start reading {@code accounts}, first writing out the oldest chunk if {@code concurrency}
+     * are already in flight.
+     */
+    private void submit(String contractAddress, BigInteger block, List<String> accounts, Deque<Chunk> inFlight,
+                        Output output) throws IOException {
+        if (inFlight.size() == concurrency) {
+            output.chunk(await(inFlight.poll()));
+        }
+        List<String> valid = accounts.stream().filter(WalletUtils::isValidAddress).toList();
+        List<CompletableFuture<String>> balances = valid.isEmpty() ? List.of()
+                : storageSlotReader.balances(contractAddress, valid, block, RpcWorkload.BULK, RpcPriority.BACKGROUND);
+        List<CompletableFuture<String>> results = new ArrayList<>(accounts.size());
+        int next = 0;
+        for (String account : accounts) {
+            results.add(WalletUtils.isValidAddress(account) ? balances.get(next++)
+                    : CompletableFuture.failedFuture(new IllegalArgumentException("Invalid address")));
+        }
+        inFlight.add(new Chunk(accounts, results));
+    }
+
+    private static Chunk await(Chunk chunk) throws InterruptedIOException {
+        try {
+            CompletableFuture.allOf(chunk.results().toArray(CompletableFuture[]::new)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for balance chunks");
+        } catch (ExecutionException e) {
+            // Failed reads are reported per address
+        }
+        return chunk;
+    }
+
+    private record Chunk(List<String> accounts, List<CompletableFuture<String>> results) {
+    }
+
+    /**
+     * NDJSON lines written on the request thread, which is the only one touching the response.
+     */
+    private final class Output {
+
+        private final OutputStream out;
+        private long written;
+
+        Output(OutputStream out) {
+            this.out = out;
+        }
+
+        void chunk(Chunk chunk) throws IOException {
+            List<String> accounts = chunk.accounts();
+            List<Map<String, String>> lines = new ArrayList<>(accounts.size());
+            for (int i = 0; i < accounts.size(); i++) {
+                Map<String, String> line = new LinkedHashMap<>();
+                line.put("address", accounts.get(i));
+                CompletableFuture<String> result = chunk.results().get(i);
+                if (result.isCompletedExceptionally()) {
+                    line.put("error", result.handle((value, error) -> rootMessage(error)).join());
+                } else {
+                    String hex = result.join();
+                    if (Numeric.cleanHexPrefix(hex).isEmpty()) {
+                        line.put("error", "Empty response");
+                    } else {
+                        line.put("balance", Numeric.toBigInt(hex).toString());
+                    }
+                }
+                lines.add(line);
+            }
+            write(lines);
+        }
+
+        private void write(List<Map<String, String>> lines) throws IOException {
+            try {
+                for (Map<String, String> line : lines) {
+                    out.write(objectMapper.writeValueAsBytes(line));
+                    out.write('\n');
+                }
+                out.flush();
+            } catch (IOException e) {
+                log.debug("Bulk balance client went away: {}", e.getMessage());
+                throw e;
+            }
+            written += lines.size();
+        }
+
+        private String rootMessage(Throwable error) {
+            Throwable cause = error;
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.wetech.demo.web3j.service;
+
+import com.wetech.demo.web3j.rpc.RpcContext;
+import com.wetech.demo.web3j.rpc.RpcPriority;
+import io.reactivex.disposables.Disposable;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows the chain head on behalf of components that keep per-block state. Heads are delivered
+ * to listeners one at a time on the events executor, in the background RPC lane; after a subscription error listeners are
+ * told that heads may have been missed, and the subscription is re-established.
+ * <p>
+ * Nothing is subscribed unless a listener registered before startup.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChainHeadTracker implements SmartLifecycle {
+
+    public interface Listener {
+
+        void onHead(BigInteger head);
+
+        /**
+         * Heads may have been missed; anything derived from them can no longer be trusted.
+         */
+        void onHeadLost();
+    }
+
+    private final ContractEventSource eventSource;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    @Value("${web3j.head-tracker.resubscribe-ms:1000}")
+    private long resubscribeMs;
+
+    @Value("${web3j.block-time-ms:2000}")
+    private long blockTimeMs;
+
+    private volatile BigInteger head;
+    private volatile long headAt;
+    private Disposable subscription;
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return the latest head seen, or {@code null} while it is unknown
+     */
+    public BigInteger head() {
+        return head;
+    }
+
+    /**
+     * @return whether the head was seen within the last block interval, so reads pinned to it are
+     * not behind latest; always true when no block interval is configured
+     */
+    public boolean isCurrent() {
+        return head != null
+                && (blockTimeMs <= 0 || System.nanoTime() - headAt <= TimeUnit.MILLISECONDS.toNanos(blockTimeMs));
+    }
+
+    @Override
+    public synchronized void start() {
+        if (listeners.isEmpty() || subscription != null) {
+            return;
+        }
+        subscription = eventSource.blockNumbers()
+                .doOnError(this::lost)
+                .retryWhen(errors -> errors.delay(resubscribeMs, TimeUnit.MILLISECONDS))
+                .subscribe(this::publish, error -> log.error("Chain head tracking stopped", error));
+        log.info("Tracking chain head for {} listener(s)", listeners.size());
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+            subscription = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return subscription != null;
+    }
+
+    private void publish(BigInteger number) {
+        headAt = System.nanoTime();
+        head = number;
+        for (Listener listener : listeners) {
+            try {
+                // Nobody is waiting on head work: keep its reads out of the interactive lane
+                RpcContext.call(RpcPriority.BACKGROUND, null, () -> {
+                    listener.onHead(number);
+                    return null;
+                });
+            } catch (Exception e) {
+                log.warn("Head listener {} failed on block {}", listener, number, e);
+            }
+        }
+    }
+
+    private void lost(Throwable error) {
+        log.warn("Lost chain head subscription, retrying in {}ms: {}", resubscribeMs, error.getMessage());
+        head = null;
+        listeners.forEach(Listener::onHeadLost);
+    }
+}
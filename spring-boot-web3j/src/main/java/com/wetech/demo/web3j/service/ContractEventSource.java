@@ -0,0 +1,81 @@
+package com.wetech.demo.web3j.service;
+
+import com.wetech.demo.web3j.rpc.RpcCalls;
+import com.wetech.demo.web3j.rpc.RpcWorkload;
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.web3j.abi.EventEncoder;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * Live contract logs and chain head, pushed over {@code eth_subscribe} when the WebSocket
+ * transport is configured and polled through filters otherwise. Downstream processing runs on
+ * the events executor, never on the transport's or poller's threads.
+ */
+@Service
+@RequiredArgsConstructor
+public class ContractEventSource {
+
+    private final Web3j web3j;
+    private final RpcCalls rpcCalls;
+
+    @Value("${web3j.transport:http}")
+    private String transport;
+
+    public boolean isPush() {
+        return "ws".equalsIgnoreCase(transport);
+    }
+
+    /**
+     * New logs of {@code event} emitted by {@code contractAddress}, starting from the current head.
+     */
+    public Flowable<Log> logs(String contractAddress, Event event) {
+        String topic = EventEncoder.encode(event);
+        Flowable<Log> logs;
+        if (isPush()) {
+            logs = web3j.logsNotifications(List.of(contractAddress), List.of(topic))
+                    .map(notification -> toLog(notification.getParams().getResult()));
+        } else {
+            EthFilter filter = new EthFilter(DefaultBlockParameterName.LATEST, DefaultBlockParameterName.LATEST,
+                    contractAddress);
+            filter.addSingleTopic(topic);
+            logs = web3j.ethLogFlowable(filter);
+        }
+        return logs.observeOn(Schedulers.from(rpcCalls.executor(RpcWorkload.EVENTS)));
+    }
+
+    /**
+     * Numbers of new canonical head blocks as they arrive.
+     */
+    public Flowable<BigInteger> blockNumbers() {
+        Flowable<BigInteger> numbers = isPush()
+                ? web3j.newHeadsNotifications()
+                        .map(notification -> Numeric.decodeQuantity(notification.getParams().getResult().getNumber()))
+                : web3j.blockFlowable(false).map(block -> block.getBlock().getNumber());
+        return numbers.observeOn(Schedulers.from(rpcCalls.executor(RpcWorkload.EVENTS)));
+    }
+
+    private static Log toLog(org.web3j.protocol.websocket.events.Log pushed) {
+        Log converted = new Log();
+        converted.setAddress(pushed.getAddress());
+        converted.setBlockHash(pushed.getBlockHash());
+        converted.setBlockNumber(pushed.getBlockNumber());
+        converted.setData(pushed.getData());
+        converted.setLogIndex(pushed.getLogIndex());
+        converted.setTopics(pushed.getTopics());
+        converted.setTransactionHash(pushed.getTransactionHash());
+        converted.setTransactionIndex(pushed.getTransactionIndex());
+        return converted;
+    }
+}
@@ -0,0 +1,15 @@
+package com.wetech.demo.web3j.service;
+
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * Results of several contract reads taken at the same block, in the order they were requested.
+ */
+public record ContractSnapshot(BigInteger blockNumber, List<Object> values) {
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(int index) {
+        return (T) values.get(index);
+    }
+}
@@ -1,17 +1,45 @@
 package com.wetech.demo.web3j.service;
 
 import com.wetech.demo.web3j.contracts.erc20test.ERC20Test;
+import com.wetech.demo.web3j.rpc.LogStreamReader;
+import com.wetech.demo.web3j.rpc.RpcCalls;
+import com.wetech.demo.web3j.rpc.RpcContext;
+import com.wetech.demo.web3j.rpc.RpcPriority;
+import io.reactivex.Flowable;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.web3j.crypto.Credentials;
+import org.web3j.abi.EventEncoder;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.abi.datatypes.Type;
 import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.RemoteFunctionCall;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.protocol.core.methods.response.Log;
 import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.tx.TransactionManager;
+import org.web3j.tx.exceptions.ContractCallException;
 import org.web3j.tx.gas.ContractGasProvider;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
@@ -21,6 +49,19 @@ public class ERC20Service {
     private final Web3j web3j;
     private final Credentials credentials;
     private final ContractGasProvider gasProvider;
+    private final TransactionManager transactionManager;
+    private final ContractEventSource eventSource;
+    private final RpcCalls rpcCalls;
+    private final LogStreamReader logStreamReader;
+    private final BalanceCache balanceCache;
+    private final AllowanceCache allowanceCache;
+    private final TotalSupplyTracker totalSupplyTracker;
+    private final MulticallBatcher multicallBatcher;
+    private final PendingEffectsOverlay pendingEffects;
+    private final ChainHeadTracker headTracker;
+
+    /** 已部署合约的 name/symbol/decimals 不会改变，缓存条目永不过期 */
+    private final Map<String, CompletableFuture<TokenMetadata>> metadataCache = new ConcurrentHashMap<>();
 
     private ERC20Test contract;
     @Getter
@@ -48,17 +89,18 @@ public class ERC20Service {
      */
     public CompletableFuture<String> deployContract() {
         log.info("Deploying ERC20Test contract...");
-        return ERC20Test.deploy(web3j, credentials, gasProvider)
-                .sendAsync()
+        return rpcCalls.send(RpcPriority.TRANSACTION, ERC20Test.deploy(web3j, credentials, gasProvider))
                 .thenApply(contract -> {
-                    this.contract = contract;
+                    // 部署会等待回执；之后的交易改用只提交不等待回执的交易管理器
+                    this.contract = ERC20Test.load(contract.getContractAddress(), web3j, transactionManager, gasProvider);
                     this.contractAddress = contract.getContractAddress();
                     log.info("ERC20Test contract deployed to: {}", contractAddress);
+                    metadata();
                     return contractAddress;
                 })
                 .exceptionally(throwable -> {
                     log.error("Failed to deploy contract: {}", throwable.getMessage());
-                    throw new RuntimeException("Contract deployment failed: " + throwable.getMessage());
+                    throw new RuntimeException("Contract deployment failed: " + throwable.getMessage(), throwable);
                 });
     }
 
@@ -68,9 +110,10 @@ public class ERC20Service {
     public void loadContract(String contractAddress) {
         try {
             log.info("Loading ERC20Test contract from address: {}", contractAddress);
-            this.contract = ERC20Test.load(contractAddress, web3j, credentials, gasProvider);
+            this.contract = ERC20Test.load(contractAddress, web3j, transactionManager, gasProvider);
             this.contractAddress = contractAddress;
             log.info("Contract loaded successfully");
+            metadata();
         } catch (Exception e) {
             log.error("Failed to load contract: {}", e.getMessage());
             throw new RuntimeException("Contract loading failed: " + e.getMessage());
@@ -86,17 +129,18 @@ public class ERC20Service {
         log.info("Minting {} tokens", value);
 
         // 根据您的合约ABI调整参数
-        return contract.mint(value).sendAsync()
+        return rpcCalls.transact(contract.mint(value))
                 .thenApply(receipt -> {
                     if (!receipt.isStatusOK()) {
                         throw new RuntimeException("Mint transaction failed with status: " + receipt.getStatus());
                     }
                     log.info("Mint successful, transaction hash: {}", receipt.getTransactionHash());
+                    pendingEffects.record(receipt);
                     return receipt;
                 })
                 .exceptionally(throwable -> {
                     log.error("Mint operation failed: {}", throwable.getMessage());
-                    throw new RuntimeException("Mint failed: " + throwable.getMessage());
+                    throw new RuntimeException("Mint failed: " + throwable.getMessage(), throwable);
                 });
     }
 
@@ -109,17 +153,18 @@ public class ERC20Service {
         if (contract == null) throw new IllegalStateException("Contract not deployed or loaded");
         log.info("Transferring {} tokens to address: {}", value, to);
 
-        return contract.transfer(to, value).sendAsync()
+        return rpcCalls.transact(contract.transfer(to, value))
                 .thenApply(receipt -> {
                     if (!receipt.isStatusOK()) {
                         throw new RuntimeException("Transfer transaction failed with status: " + receipt.getStatus());
                     }
                     log.info("Transfer successful, transaction hash: {}", receipt.getTransactionHash());
+                    pendingEffects.record(receipt);
                     return receipt;
                 })
                 .exceptionally(throwable -> {
                     log.error("Transfer operation failed: {}", throwable.getMessage());
-                    throw new RuntimeException("Transfer failed: " + throwable.getMessage());
+                    throw new RuntimeException("Transfer failed: " + throwable.getMessage(), throwable);
                 });
     }
 
@@ -128,17 +173,42 @@ public class ERC20Service {
      * @param account 查询地址
      */
     public CompletableFuture<BigInteger> balanceOf(String account) {
+        return balanceOf(account, 0).thenApply(BlockValue::value);
+    }
+
+    /**
+     * 查询余额，并返回该余额所在的区块
+     * @param account 查询地址
+     * @param maxStaleBlocks 可接受的最大落后区块数；在此范围内的缓存值立即返回，同时后台刷新
+     */
+    public CompletableFuture<BlockValue<BigInteger>> balanceOf(String account, long maxStaleBlocks) {
+        return balanceOf(account, maxStaleBlocks, false);
+    }
+
+    /**
+     * 查询余额，可选择叠加本服务已确认、但读取所在区块尚未包含的交易带来的余额变化（读己之写）
+     * @param account 查询地址
+     * @param maxStaleBlocks 可接受的最大落后区块数；在此范围内的缓存值立即返回，同时后台刷新
+     * @param includePending 是否叠加尚未反映到读取区块的 transfer/mint/transferFrom 结果
+     */
+    public CompletableFuture<BlockValue<BigInteger>> balanceOf(String account, long maxStaleBlocks,
+                                                               boolean includePending) {
         if (contract == null) throw new IllegalStateException("Contract not deployed or loaded");
         log.info("Getting balance for address: {}", account);
 
-        return contract.balanceOf(account).sendAsync()
+        ERC20Test token = contract;
+        return balanceCache.read(token.getContractAddress(), account,
+                        block -> batchedRead(token, token.balanceOf(account), block), maxStaleBlocks)
+                .thenApply(balance -> includePending
+                        ? pendingEffects.project(token.getContractAddress(), account, balance)
+                        : balance)
                 .thenApply(balance -> {
-                    log.info("Balance for {}: {}", account, balance);
+                    log.info("Balance for {}: {} at block {}", account, balance.value(), balance.blockNumber());
                     return balance;
                 })
                 .exceptionally(throwable -> {
                     log.error("Balance query failed: {}", throwable.getMessage());
-                    throw new RuntimeException("Balance query failed: " + throwable.getMessage());
+                    throw new RuntimeException("Balance query failed: " + throwable.getMessage(), throwable);
                 });
     }
 
@@ -151,7 +221,7 @@ public class ERC20Service {
         if (contract == null) throw new IllegalStateException("Contract not deployed or loaded");
         log.info("Approving {} tokens for spender: {}", value, spender);
 
-        return contract.approve(spender, value).sendAsync()
+        return rpcCalls.transact(contract.approve(spender, value))
                 .thenApply(receipt -> {
                     if (!receipt.isStatusOK()) {
                         throw new RuntimeException("Approve transaction failed with status: " + receipt.getStatus());
@@ -161,7 +231,7 @@ public class ERC20Service {
                 })
                 .exceptionally(throwable -> {
                     log.error("Approve operation failed: {}", throwable.getMessage());
-                    throw new RuntimeException("Approve failed: " + throwable.getMessage());
+                    throw new RuntimeException("Approve failed: " + throwable.getMessage(), throwable);
                 });
     }
 
@@ -178,12 +248,16 @@ public class ERC20Service {
 
         log.info("TransferFrom - From: {}, To: {}, Value: {}", from, to, value);
 
-        // 使用异步方式检查授权额度和余额
-        CompletableFuture<BigInteger> allowanceFuture = contract.allowance(from, credentials.getAddress()).sendAsync();
-        CompletableFuture<BigInteger> balanceFuture = contract.balanceOf(from).sendAsync();
-
-        return allowanceFuture.thenCombine(balanceFuture, (allowance, balance) -> {
-                    log.info("Allowance: {}, Balance: {}", allowance, balance);
+        // 授权额度和余额在同一区块上一次读取，避免两次读取之间出块导致预检查基于不同区块的状态
+        ERC20Test token = contract;
+        String spender = credentials.getAddress();
+        return snapshot(List.of(token.allowance(from, spender), token.balanceOf(from)))
+                .thenApply(snapshot -> {
+                    BigInteger allowance = snapshot.get(0);
+                    // 叠加本服务刚确认的交易，连续的 transferFrom 不会在区块头跟上之前读到旧余额
+                    BigInteger balance = pendingEffects.project(token.getContractAddress(), from,
+                            new BlockValue<BigInteger>(snapshot.get(1), snapshot.blockNumber())).value();
+                    log.info("Allowance: {}, Balance: {} at block {}", allowance, balance, snapshot.blockNumber());
 
                     if (allowance.compareTo(value) < 0) {
                         throw new RuntimeException("Insufficient allowance: " + allowance + " < " + value);
@@ -192,7 +266,7 @@ public class ERC20Service {
                         throw new RuntimeException("Insufficient balance: " + balance + " < " + value);
                     }
 
-                    return contract.transferFrom(from, to, value).sendAsync();
+                    return rpcCalls.transact(token.transferFrom(from, to, value));
                 })
                 .thenCompose(future -> future)
                 .thenApply(receipt -> {
@@ -200,11 +274,12 @@ public class ERC20Service {
                         throw new RuntimeException("TransferFrom failed with status: " + receipt.getStatus());
                     }
                     log.info("TransferFrom successful, txHash: {}", receipt.getTransactionHash());
+                    pendingEffects.record(receipt);
                     return receipt;
                 })
                 .exceptionally(throwable -> {
                     log.error("TransferFrom operation failed: {}", throwable.getMessage());
-                    throw new RuntimeException("TransferFrom failed: " + throwable.getMessage());
+                    throw new RuntimeException("TransferFrom failed: " + throwable.getMessage(), throwable);
                 });
     }
 
@@ -213,55 +288,249 @@ public class ERC20Service {
      * 查询授权额度
      */
     public CompletableFuture<BigInteger> allowance(String owner, String spender) {
+        return allowance(owner, spender, 0).thenApply(BlockValue::value);
+    }
+
+    /**
+     * 查询授权额度，并返回该额度所在的区块
+     * @param maxStaleBlocks 可接受的最大落后区块数；在此范围内的缓存值立即返回，同时后台刷新
+     */
+    public CompletableFuture<BlockValue<BigInteger>> allowance(String owner, String spender, long maxStaleBlocks) {
         if (contract == null) throw new IllegalStateException("Contract not deployed or loaded");
         log.info("Querying allowance - Owner: {}, Spender: {}", owner, spender);
 
-        return contract.allowance(owner, spender).sendAsync()
+        ERC20Test token = contract;
+        return allowanceCache.read(token.getContractAddress(), owner, spender,
+                        block -> batchedRead(token, token.allowance(owner, spender), block), maxStaleBlocks)
                 .thenApply(allowance -> {
-                    log.info("Allowance for spender {} from owner {}: {}", spender, owner, allowance);
+                    log.info("Allowance for spender {} from owner {}: {} at block {}",
+                            spender, owner, allowance.value(), allowance.blockNumber());
                     return allowance;
                 })
                 .exceptionally(throwable -> {
                     log.error("Allowance query failed: {}", throwable.getMessage());
-                    throw new RuntimeException("Allowance query failed: " + throwable.getMessage());
+                    throw new RuntimeException("Allowance query failed: " + throwable.getMessage(), throwable);
+                });
+    }
+
+    /**
+     * 单值只读调用，与同一时间窗口内的其他读取合并为一次 Multicall3 调用
+     * @param block 读取的区块，为 null 时读取最新区块
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> batchedRead(ERC20Test token, RemoteFunctionCall<T> call, BigInteger block) {
+        return multicallBatcher.call(token.getContractAddress(), call.encodeFunctionCall(), block)
+                .thenApply(result -> {
+                    List<Type> decoded = call.decodeFunctionResponse(result);
+                    if (decoded.isEmpty()) {
+                        throw new ContractCallException("Empty response from " + token.getContractAddress());
+                    }
+                    return (T) decoded.get(0).getValue();
                 });
     }
 
+    /**
+     * 一致性快照读取：所有读取固定在同一个区块上，作为一个批量请求发送，返回该区块号和各结果
+     * <p>
+     * 区块取已跟踪的链头，只需一次往返；尚未跟踪到链头时先查询 eth_blockNumber
+     * @param calls 本合约的只读调用，结果按顺序返回
+     */
+    public CompletableFuture<ContractSnapshot> snapshot(List<? extends RemoteFunctionCall<?>> calls) {
+        return snapshotAt(headTracker.head(), calls);
+    }
+
+    /**
+     * 在指定区块上读取快照；blockNumber 为 null 时使用当前最新区块
+     */
+    public CompletableFuture<ContractSnapshot> snapshotAt(BigInteger blockNumber,
+                                                          List<? extends RemoteFunctionCall<?>> calls) {
+        if (contract == null) throw new IllegalStateException("Contract not deployed or loaded");
+        String address = contract.getContractAddress();
+        return rpcCalls.submit(RpcPriority.INTERACTIVE, () -> readSnapshot(address, calls,
+                blockNumber != null ? blockNumber : headBlockNumber()));
+    }
+
+    private BigInteger headBlockNumber() throws IOException {
+        EthBlockNumber head = web3j.ethBlockNumber().send();
+        if (head.hasError()) {
+            throw new IOException("eth_blockNumber failed: " + head.getError().getMessage());
+        }
+        return head.getBlockNumber();
+    }
+
+    private ContractSnapshot readSnapshot(String address, List<? extends RemoteFunctionCall<?>> calls,
+                                          BigInteger blockNumber) throws IOException {
+        DefaultBlockParameter block = DefaultBlockParameter.valueOf(blockNumber);
+
+        BatchRequest batch = web3j.newBatch();
+        List<Request<?, EthCall>> requests = new ArrayList<>(calls.size());
+        for (RemoteFunctionCall<?> call : calls) {
+            Request<?, EthCall> request = web3j.ethCall(Transaction.createEthCallTransaction(
+                    transactionManager.getFromAddress(), address, call.encodeFunctionCall()), block);
+            requests.add(request);
+            batch.add(request);
+        }
+        BatchResponse response = batch.send();
+
+        // 批量响应的顺序不固定，按 id 匹配
+        Map<Long, Response<?>> byId = new HashMap<>();
+        for (Response<?> item : response.getResponses()) {
+            byId.put(item.getId(), item);
+        }
+        List<Object> values = new ArrayList<>(calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            Request<?, EthCall> request = requests.get(i);
+            if (!(byId.get(request.getId()) instanceof EthCall result)) {
+                throw new IOException("No response in batch for eth_call " + request.getId());
+            }
+            if (result.hasError()) {
+                throw new IOException("eth_call failed at block " + blockNumber + ": " + result.getError().getMessage());
+            }
+            if (result.isReverted()) {
+                throw new ContractCallException(result.getRevertReason());
+            }
+            List<Type> decoded = calls.get(i).decodeFunctionResponse(result.getValue());
+            values.add(decoded.isEmpty() ? null : decoded.get(0).getValue());
+        }
+        return new ContractSnapshot(blockNumber, values);
+    }
+
     // 在ERC20Service类中添加方法
     public String getDeployerAddress() {
         return credentials.getAddress();
     }
 
 
+    /**
+     * 获取代币元数据（name/symbol/decimals），每个合约只查询一次，失败时下次重试
+     */
+    public CompletableFuture<TokenMetadata> metadata() {
+        if (contract == null) throw new IllegalStateException("Contract not deployed or loaded");
+        ERC20Test token = contract;
+        String key = token.getContractAddress().toLowerCase();
+        CompletableFuture<TokenMetadata> cached = metadataCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        CompletableFuture<TokenMetadata> loading = new CompletableFuture<>();
+        cached = metadataCache.putIfAbsent(key, loading);
+        if (cached != null) {
+            return cached;
+        }
+        // 三个调用同时发出，便于批量层合并为一次请求
+        CompletableFuture<String> name = rpcCalls.send(RpcPriority.INTERACTIVE, token.name());
+        CompletableFuture<String> symbol = rpcCalls.send(RpcPriority.INTERACTIVE, token.symbol());
+        CompletableFuture<BigInteger> decimals = rpcCalls.send(RpcPriority.INTERACTIVE, token.decimals());
+        CompletableFuture.allOf(name, symbol, decimals).whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                metadataCache.remove(key, loading);
+                loading.completeExceptionally(throwable);
+                return;
+            }
+            TokenMetadata metadata = new TokenMetadata(name.join(), symbol.join(), decimals.join());
+            log.info("Cached metadata for {}: {}", key, metadata);
+            loading.complete(metadata);
+        });
+        return loading;
+    }
+
+    /**
+     * 代币信息快照：name、symbol、decimals、totalSupply 按此顺序在同一区块上一次读取，并顺带填充元数据缓存
+     */
+    public CompletableFuture<ContractSnapshot> tokenInfo() {
+        if (contract == null) throw new IllegalStateException("Contract not deployed or loaded");
+        ERC20Test token = contract;
+        return snapshot(List.of(token.name(), token.symbol(), token.decimals(), token.totalSupply()))
+                .thenApply(snapshot -> {
+                    metadataCache.putIfAbsent(token.getContractAddress().toLowerCase(), CompletableFuture.completedFuture(
+                            new TokenMetadata(snapshot.get(0), snapshot.get(1), snapshot.get(2))));
+                    return snapshot;
+                });
+    }
+
     /**
      * 获取代币名称
      */
     public CompletableFuture<String> name() {
-        if (contract == null) throw new IllegalStateException("Contract not deployed or loaded");
-        return contract.name().sendAsync();
+        return metadata().thenApply(TokenMetadata::name);
     }
 
     /**
      * 获取代币符号
      */
     public CompletableFuture<String> symbol() {
-        if (contract == null) throw new IllegalStateException("Contract not deployed or loaded");
-        return contract.symbol().sendAsync();
+        return metadata().thenApply(TokenMetadata::symbol);
     }
 
     /**
      * 获取代币小数位数
      */
     public CompletableFuture<BigInteger> decimals() {
-        if (contract == null) throw new IllegalStateException("Contract not deployed or loaded");
-        return contract.decimals().sendAsync();
+        return metadata().thenApply(TokenMetadata::decimals);
     }
 
     /**
-     * 获取总供应量
+     * 获取总供应量（由 mint/burn 事件增量维护，后台定期与链上对账）
      */
     public CompletableFuture<BigInteger> totalSupply() {
+        return totalSupplyAtHead().thenApply(BlockValue::value);
+    }
+
+    /**
+     * 获取总供应量，并返回其所在的区块
+     */
+    public CompletableFuture<BlockValue<BigInteger>> totalSupplyAtHead() {
         if (contract == null) throw new IllegalStateException("Contract not deployed or loaded");
-        return contract.totalSupply().sendAsync();
+        return totalSupplyTracker.totalSupply(contractAddress);
+    }
+
+    /**
+     * 订阅Transfer事件（WebSocket下为推送，否则轮询）
+     */
+    public Flowable<ERC20Test.TransferEventResponse> transferEvents() {
+        if (contract == null) throw new IllegalStateException("Contract not deployed or loaded");
+        return eventSource.logs(contractAddress, ERC20Test.TRANSFER_EVENT)
+                .map(ERC20Test::getTransferEventFromLog);
+    }
+
+    /**
+     * 订阅Approval事件（WebSocket下为推送，否则轮询）
+     */
+    public Flowable<ERC20Test.ApprovalEventResponse> approvalEvents() {
+        if (contract == null) throw new IllegalStateException("Contract not deployed or loaded");
+        return eventSource.logs(contractAddress, ERC20Test.APPROVAL_EVENT)
+                .map(ERC20Test::getApprovalEventFromLog);
+    }
+
+    /**
+     * 流式读取区块范围内的Transfer事件，逐条交给consumer（在调用线程上、后台优先级），返回事件数量
+     */
+    public long streamTransferEvents(DefaultBlockParameter fromBlock, DefaultBlockParameter toBlock,
+                                     Consumer<ERC20Test.TransferEventResponse> consumer) throws IOException {
+        return streamLogs(ERC20Test.TRANSFER_EVENT, fromBlock, toBlock,
+                event -> consumer.accept(ERC20Test.getTransferEventFromLog(event)));
+    }
+
+    /**
+     * 流式读取区块范围内的Approval事件，逐条交给consumer（在调用线程上、后台优先级），返回事件数量
+     */
+    public long streamApprovalEvents(DefaultBlockParameter fromBlock, DefaultBlockParameter toBlock,
+                                     Consumer<ERC20Test.ApprovalEventResponse> consumer) throws IOException {
+        return streamLogs(ERC20Test.APPROVAL_EVENT, fromBlock, toBlock,
+                event -> consumer.accept(ERC20Test.getApprovalEventFromLog(event)));
+    }
+
+    private long streamLogs(Event event, DefaultBlockParameter fromBlock, DefaultBlockParameter toBlock,
+                            Consumer<Log> consumer) throws IOException {
+        if (contract == null) throw new IllegalStateException("Contract not deployed or loaded");
+        EthFilter filter = new EthFilter(fromBlock, toBlock, contractAddress);
+        filter.addSingleTopic(EventEncoder.encode(event));
+        try {
+            return RpcContext.call(RpcPriority.BACKGROUND, () -> logStreamReader.stream(filter, consumer));
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
     }
-}
\ No newline at end of file
+}
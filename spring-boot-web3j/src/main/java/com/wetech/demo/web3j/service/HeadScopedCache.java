@@ -0,0 +1,273 @@
+package com.wetech.demo.web3j.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.wetech.demo.web3j.rpc.LogStreamReader;
+import com.wetech.demo.web3j.rpc.RpcContext;
+import com.wetech.demo.web3j.rpc.RpcPriority;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Contract state read pinned to the tracked head block and kept across heads until logs of a
+ * new block show it changed.
+ * <p>
+ * On every head the subclass turns the logs of the blocks since the previous head into an
+ * update, which is applied right after the new head is published. Each load remembers the block
+ * it was read at; loads of contracts that had no entries when the logs were queried are dropped
+ * once the head is applied, unless they were read at that head. A reorg, a gap wider than
+ * {@code maxInvalidationRange} blocks, a failed log query or a lost head subscription clear the
+ * whole cache; until a head is known, and whenever the tracked head is older than one block
+ * interval (see {@link ChainHeadTracker#isCurrent()}), reads bypass it and go to latest. Size is bounded with Caffeine's W-TinyLFU
+ * eviction; hits, misses and evictions are exported as {@code cache.*} metrics tagged with the
+ * cache name.
+ * <p>
+ * Entries dropped by a new block are retired rather than forgotten: {@link #read} may serve a
+ * retired value, together with the last block it was valid at, to callers that accept that many
+ * blocks of staleness, and refreshes the entry in the background.
+ */
+@Slf4j
+public abstract class HeadScopedCache<K, V> implements ChainHeadTracker.Listener {
+
+    protected final AsyncCache<K, V> cache;
+    private final Cache<K, BlockValue<V>> retired;
+    /** Block each in-flight or cached load was read at, by identity of its future */
+    private final Cache<CompletableFuture<V>, BigInteger> loadBlocks;
+    private final Counter staleServed;
+    private final LogStreamReader logStreamReader;
+    private final ChainHeadTracker headTracker;
+    private final String name;
+    private final boolean enabled;
+    private final long maxInvalidationRange;
+
+    /** Head up to which updates have been applied; entries are read at this block */
+    private volatile BigInteger validHead;
+    /** Head the entries being updated were valid at; only touched on the head thread */
+    private BigInteger previousHead;
+
+    protected HeadScopedCache(String name, LogStreamReader logStreamReader, ChainHeadTracker headTracker, MeterRegistry meterRegistry,
+                              boolean enabled, long maxSize, long maxInvalidationRange) {
+        this.name = name;
+        this.logStreamReader = logStreamReader;
+        this.headTracker = headTracker;
+        this.enabled = enabled;
+        this.maxInvalidationRange = maxInvalidationRange;
+        this.cache = CaffeineCacheMetrics.monitor(meterRegistry,
+                Caffeine.newBuilder().maximumSize(maxSize).recordStats().<K, V>buildAsync(), name);
+        this.retired = Caffeine.newBuilder().maximumSize(maxSize).build();
+        this.loadBlocks = Caffeine.newBuilder().weakKeys().build();
+        this.staleServed = Counter.builder("web3j.cache.stale_served")
+                .description("Reads answered with a value from an earlier block while it was refreshed")
+                .tag("cache", name)
+                .register(meterRegistry);
+        if (enabled) {
+            headTracker.addListener(this);
+        }
+    }
+
+    /**
+     * @return the contract whose logs can change the entry
+     */
+    protected abstract String contractOf(K key);
+
+    /**
+     * @return the topics (OR-ed) of the logs that can change entries
+     */
+    protected abstract List<String> topics();
+
+    /**
+     * Turn the logs of the new blocks, in chain order, into the change to apply to {@link #cache}.
+     */
+    protected abstract Runnable updateFor(List<Log> logs);
+
+    /**
+     * @return the head entries are currently valid at, or {@code null} while it is unknown
+     */
+    protected BigInteger validHead() {
+        return validHead;
+    }
+
+    /**
+     * Like {@link #get}, but reports the block the value is valid at, and accepts a retired value
+     * up to {@code maxStaleBlocks} behind the head instead of waiting for a load.
+     */
+    protected CompletableFuture<BlockValue<V>> read(K key, Function<BigInteger, CompletableFuture<V>> loader,
+                                                   long maxStaleBlocks) {
+        BigInteger head = readHead();
+        CompletableFuture<V> current = enabled && head != null ? cache.asMap().get(key) : null;
+        if (enabled && head != null && maxStaleBlocks > 0) {
+            BlockValue<V> stale = retired.getIfPresent(key);
+            if ((current == null || !current.isDone()) && stale != null
+                    && head.subtract(stale.blockNumber()).compareTo(BigInteger.valueOf(maxStaleBlocks)) <= 0) {
+                staleServed.increment();
+                // Refresh in the background; the fresh value lands in the cache
+                refresh(key, loader);
+                return CompletableFuture.completedFuture(stale);
+            }
+        }
+        CompletableFuture<V> value = get(key, loader);
+        BigInteger block = blockOf(value, value == current && current.isDone() ? head : null);
+        return value.thenApply(v -> new BlockValue<>(v, block));
+    }
+
+    /**
+     * Load {@code key} for nobody in particular: in the background lane, without the deadline of
+     * the request that happened to trigger it.
+     */
+    private void refresh(K key, Function<BigInteger, CompletableFuture<V>> loader) {
+        try {
+            RpcContext.call(RpcPriority.BACKGROUND, null, () -> get(key, loader));
+        } catch (Exception e) {
+            log.debug("Could not refresh {} entry {}: {}", name, key, e.getMessage());
+        }
+    }
+
+    /**
+     * A value already cached when it was looked up is valid at the head of that lookup; one being
+     * loaded only at the block it is read at, which may be older or newer.
+     */
+    private BigInteger blockOf(CompletableFuture<V> value, BigInteger cachedAt) {
+        BigInteger loadedAt = loadBlocks.getIfPresent(value);
+        if (cachedAt == null || loadedAt == null) {
+            return cachedAt != null ? cachedAt : loadedAt;
+        }
+        return cachedAt.max(loadedAt);
+    }
+
+    /**
+     * @param loader reads the value at the given block, or at latest when given {@code null}
+     */
+    protected CompletableFuture<V> get(K key, Function<BigInteger, CompletableFuture<V>> loader) {
+        BigInteger block = readHead();
+        if (!enabled || block == null) {
+            return loader.apply(null);
+        }
+        return cache.get(key, (k, executor) -> {
+            CompletableFuture<V> loading = loader.apply(block);
+            loadBlocks.put(loading, block);
+            loading.whenComplete((value, error) -> {
+                // A head may have been applied while this was in flight, after its update ran
+                if (error == null && !block.equals(validHead)) {
+                    cache.asMap().remove(k, loading);
+                }
+            });
+            return loading;
+        });
+    }
+
+    /**
+     * @return the head reads are pinned to, or {@code null} if they should go to latest because it
+     * is unknown or may have fallen behind, e.g. while the poller has not seen the next block yet
+     */
+    private BigInteger readHead() {
+        BigInteger head = validHead;
+        return head != null && headTracker.isCurrent() ? head : null;
+    }
+
+    @Override
+    public void onHead(BigInteger head) {
+        BigInteger previous = validHead;
+        if (previous != null && head.equals(previous)) {
+            return;
+        }
+        if (previous == null || head.compareTo(previous) < 0
+                || head.subtract(previous).compareTo(BigInteger.valueOf(maxInvalidationRange)) > 0) {
+            reset(head);
+            return;
+        }
+        Set<String> contracts = Set.copyOf(cache.asMap().keySet().stream().map(this::contractOf).toList());
+        Runnable update;
+        try {
+            update = updateFor(logs(contracts, previous.add(BigInteger.ONE), head));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read logs up to block {}, clearing {}: {}", head, name, e.getMessage());
+            reset(head);
+            return;
+        }
+        // Publish the head first so in-flight reads of the previous head drop themselves
+        previousHead = previous;
+        validHead = head;
+        update.run();
+        dropUncovered(contracts, head);
+    }
+
+    @Override
+    public void onHeadLost() {
+        validHead = null;
+        cache.synchronous().invalidateAll();
+        retired.invalidateAll();
+    }
+
+    /**
+     * Drop entries changed by the blocks being applied, retiring their values at the previous head.
+     */
+    protected void invalidate(Iterable<K> keys) {
+        for (K key : keys) {
+            retire(key, cache.asMap().remove(key));
+        }
+    }
+
+    private void retire(K key, CompletableFuture<V> value) {
+        if (value != null && previousHead != null && value.isDone() && !value.isCompletedExceptionally()) {
+            retired.put(key, new BlockValue<>(value.join(), previousHead));
+        }
+    }
+
+    /**
+     * Loads of contracts first cached while the logs were queried were read at the previous head
+     * and completed before this one was published, so neither the update nor the check on
+     * completion saw them.
+     */
+    private void dropUncovered(Set<String> contracts, BigInteger head) {
+        for (Map.Entry<K, CompletableFuture<V>> entry : List.copyOf(cache.asMap().entrySet())) {
+            BigInteger loadedAt = loadBlocks.getIfPresent(entry.getValue());
+            if (loadedAt != null && loadedAt.compareTo(head) < 0 && !contracts.contains(contractOf(entry.getKey()))
+                    && cache.asMap().remove(entry.getKey(), entry.getValue())) {
+                retire(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void reset(BigInteger head) {
+        BigInteger previous = validHead;
+        validHead = head;
+        if (previous != null && head.compareTo(previous) > 0) {
+            // A gap rather than a reorg: everything was still valid at the previous head
+            previousHead = previous;
+            for (K key : List.copyOf(cache.asMap().keySet())) {
+                retire(key, cache.asMap().remove(key));
+            }
+        } else {
+            cache.synchronous().invalidateAll();
+            retired.invalidateAll();
+        }
+    }
+
+    private List<Log> logs(Set<String> contracts, BigInteger fromBlock, BigInteger toBlock) throws IOException {
+        if (contracts.isEmpty()) {
+            return List.of();
+        }
+        EthFilter filter = new EthFilter(DefaultBlockParameter.valueOf(fromBlock),
+                DefaultBlockParameter.valueOf(toBlock), new ArrayList<>(contracts));
+        filter.addOptionalTopics(topics().toArray(String[]::new));
+        // Parsed as a stream: only the logs are kept, never the whole response
+        List<Log> logs = new ArrayList<>();
+        logStreamReader.stream(filter, logs::add);
+        return logs;
+    }
+}
@@ -0,0 +1,99 @@
+package com.wetech.demo.web3j.service;
+
+import org.web3j.crypto.Hash;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ABI encoding of Multicall3 {@code aggregate3((address,bool,bytes)[])} and its
+ * {@code (bool,bytes)[]} result, written out by hand: web3j's generic codec needs generated
+ * struct classes for arrays of tuples.
+ */
+final class Multicall3Codec {
+
+    static final String AGGREGATE3_SELECTOR =
+            Hash.sha3String("aggregate3((address,bool,bytes)[])").substring(0, 10);
+
+    private static final int WORD = 32;
+
+    record Call(String target, byte[] callData) {
+    }
+
+    record Result(boolean success, byte[] returnData) {
+    }
+
+    private Multicall3Codec() {
+    }
+
+    /**
+     * Every call is encoded with {@code allowFailure = true}, so one revert does not fail the rest.
+     */
+    static String encodeAggregate3(List<Call> calls) {
+        int n = calls.size();
+        List<byte[]> tuples = new ArrayList<>(n);
+        for (Call call : calls) {
+            byte[] data = call.callData();
+            byte[] tuple = new byte[3 * WORD + WORD + padded(data.length)];
+            System.arraycopy(Numeric.hexStringToByteArray(call.target()), 0, tuple, WORD - 20, 20);
+            tuple[2 * WORD - 1] = 1;
+            putWord(tuple, 2 * WORD, 3 * WORD);
+            putWord(tuple, 3 * WORD, data.length);
+            System.arraycopy(data, 0, tuple, 4 * WORD, data.length);
+            tuples.add(tuple);
+        }
+
+        int size = WORD + WORD + n * WORD + tuples.stream().mapToInt(tuple -> tuple.length).sum();
+        byte[] encoded = new byte[size];
+        putWord(encoded, 0, WORD);
+        putWord(encoded, WORD, n);
+        // Tuple offsets count from the first offset word
+        int offset = n * WORD;
+        int position = 2 * WORD + n * WORD;
+        for (int i = 0; i < n; i++) {
+            putWord(encoded, 2 * WORD + i * WORD, offset);
+            byte[] tuple = tuples.get(i);
+            System.arraycopy(tuple, 0, encoded, position, tuple.length);
+            offset += tuple.length;
+            position += tuple.length;
+        }
+        return AGGREGATE3_SELECTOR + Numeric.toHexStringNoPrefix(encoded);
+    }
+
+    static List<Result> decodeAggregate3(String hex) {
+        byte[] data = Numeric.hexStringToByteArray(hex);
+        int array = readWord(data, 0);
+        int n = readWord(data, array);
+        int heads = array + WORD;
+        List<Result> results = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int tuple = heads + readWord(data, heads + i * WORD);
+            boolean success = readWord(data, tuple) != 0;
+            int bytes = tuple + readWord(data, tuple + WORD);
+            int length = readWord(data, bytes);
+            byte[] returnData = new byte[length];
+            System.arraycopy(data, bytes + WORD, returnData, 0, length);
+            results.add(new Result(success, returnData));
+        }
+        return results;
+    }
+
+    private static int padded(int length) {
+        return (length + WORD - 1) / WORD * WORD;
+    }
+
+    private static void putWord(byte[] target, int position, int value) {
+        byte[] word = Numeric.toBytesPadded(BigInteger.valueOf(value), WORD);
+        System.arraycopy(word, 0, target, position, WORD);
+    }
+
+    private static int readWord(byte[] data, int position) {
+        if (position < 0 || position + WORD > data.length) {
+            throw new IllegalArgumentException("Malformed aggregate3 result");
+        }
+        return new BigInteger(1, Arrays.copyOfRange(data, position, position + WORD)).intValueExact();
+    }
+}
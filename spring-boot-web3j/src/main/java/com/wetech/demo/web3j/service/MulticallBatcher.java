@@ -0,0 +1,317 @@
+package com.wetech.demo.web3j.service;
+
+import com.wetech.demo.web3j.rpc.RpcCalls;
+import com.wetech.demo.web3j.rpc.RpcContext;
+import com.wetech.demo.web3j.rpc.RpcDeadlineExceededException;
+import com.wetech.demo.web3j.rpc.RpcPriority;
+import com.wetech.demo.web3j.rpc.RpcWorkload;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.protocol.core.methods.response.EthGetCode;
+import org.web3j.tx.exceptions.ContractCallException;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects read-only contract calls issued within a short window and executes them as a single
+ * Multicall3 {@code aggregate3} call, one per block they are pinned to.
+ * <p>
+ * Calls are aggregated with {@code allowFailure}, so a revert only fails its own caller. If no
+ * Multicall3 is deployed at the configured address, batches are sent as one JSON-RPC batch of
+ * plain {@code eth_call}s instead; the check is repeated every {@code probeTtlMs}.
+ * <p>
+ * A batch runs until the latest deadline among its callers (without one if any caller has none),
+ * so one caller running out of time does not fail the calls of the others; each caller's own
+ * future fails with {@link RpcDeadlineExceededException} when its deadline passes. It runs in the
+ * most urgent lane among its callers, so a background refresh never holds up a waiting client
+ * and a batch of background refreshes alone stays out of the interactive lane.
+ */
+@Slf4j
+@Service
+public class MulticallBatcher {
+
+    private final Web3j web3j;
+    private final RpcCalls rpcCalls;
+    private final boolean enabled;
+    private final String multicallAddress;
+    private final long windowNanos;
+    private final int maxCalls;
+    private final long probeTtlNanos;
+    private final ScheduledExecutorService timer;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Counter aggregated;
+    private final Counter fallbacks;
+    private final DistributionSummary batchSize;
+
+    /** Pending calls per block; the null key means latest */
+    private final Map<BigInteger, List<Pending>> pending = new HashMap<>();
+    private volatile Probe deployed;
+
+    public MulticallBatcher(Web3j web3j, RpcCalls rpcCalls, MeterRegistry meterRegistry,
+                            @Value("${web3j.multicall.enabled:true}") boolean enabled,
+                            @Value("${web3j.multicall.address:0xcA11bde05977b3631167028862bE2a173976CA11}") String multicallAddress,
+                            @Value("${web3j.multicall.window-ms:2}") long windowMs,
+                            @Value("${web3j.multicall.max-calls:200}") int maxCalls,
+                            @Value("${web3j.multicall.probe-ttl-ms:300000}") long probeTtlMs) {
+        this.web3j = web3j;
+        this.rpcCalls = rpcCalls;
+        this.enabled = enabled;
+        this.multicallAddress = multicallAddress;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxCalls = maxCalls;
+        this.probeTtlNanos = TimeUnit.MILLISECONDS.toNanos(probeTtlMs);
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "erc20-multicall-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.aggregated = Counter.builder("web3j.multicall.calls")
+                .description("Contract calls executed inside an aggregate3 call")
+                .register(meterRegistry);
+        this.fallbacks = Counter.builder("web3j.multicall.fallbacks")
+                .description("Batches sent as plain eth_calls because no Multicall3 is deployed")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("web3j.multicall.batch.size")
+                .description("Contract calls per flushed batch")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param block block to read at, or {@code null} for latest
+     * @return the raw return data of the call, hex encoded
+     */
+    public CompletableFuture<String> call(String target, String callData, BigInteger block) {
+        Long deadline = RpcContext.deadline();
+        RpcPriority priority = RpcContext.priority();
+        Pending entry = new Pending(new Multicall3Codec.Call(target, Numeric.hexStringToByteArray(callData)),
+                callData, priority, deadline, new CompletableFuture<>());
+        if (!enabled) {
+            return rpcCalls.submit(priority, () -> sendSingle(entry, block));
+        }
+        if (deadline != null) {
+            ScheduledFuture<?> expiry = timer.schedule(() -> entry.future().completeExceptionally(
+                    new RpcDeadlineExceededException("Request deadline exceeded")),
+                    deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            entry.future().whenComplete((value, error) -> expiry.cancel(false));
+        }
+        List<Pending> full = null;
+        lock.lock();
+        try {
+            List<Pending> calls = pending.computeIfAbsent(block, key -> new ArrayList<>());
+            calls.add(entry);
+            if (calls.size() >= maxCalls) {
+                full = pending.remove(block);
+            } else if (calls.size() == 1) {
+                timer.schedule(() -> flushWindow(block), windowNanos, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full != null) {
+            flush(block, full);
+        }
+        return entry.future();
+    }
+
+    /**
+     * Execute {@code callData} against {@code target} right away as one aggregate call, without
+     * waiting for a window. Each call still succeeds or fails on its own.
+     *
+     * @param workload executor the aggregate call runs on
+     * @param deadline {@link System#nanoTime()} by which the call must complete, or {@code null}
+     */
+    public List<CompletableFuture<String>> callAll(String target, List<String> callData, BigInteger block,
+                                                   RpcWorkload workload, RpcPriority priority, Long deadline) {
+        List<Pending> batch = callData.stream()
+                .map(data -> new Pending(new Multicall3Codec.Call(target, Numeric.hexStringToByteArray(data)),
+                        data, priority, deadline, new CompletableFuture<>()))
+                .toList();
+        flush(block, batch, workload, priority, deadline);
+        return batch.stream().map(Pending::future).toList();
+    }
+
+    private void flushWindow(BigInteger block) {
+        List<Pending> batch;
+        lock.lock();
+        try {
+            batch = pending.remove(block);
+        } finally {
+            lock.unlock();
+        }
+        if (batch != null) {
+            flush(block, batch);
+        }
+    }
+
+    private void flush(BigInteger block, List<Pending> batch) {
+        RpcPriority priority = mostUrgent(batch);
+        flush(block, batch, RpcCalls.workloadOf(priority), priority, latestDeadline(batch));
+    }
+
+    private static RpcPriority mostUrgent(List<Pending> batch) {
+        RpcPriority urgent = RpcPriority.BACKGROUND;
+        for (Pending entry : batch) {
+            if (entry.priority().compareTo(urgent) < 0) {
+                urgent = entry.priority();
+            }
+        }
+        return urgent;
+    }
+
+    /**
+     * @return the deadline by which no caller waits for the batch anymore, or {@code null} if one
+     * of them has none
+     */
+    private static Long latestDeadline(List<Pending> batch) {
+        Long latest = null;
+        for (Pending entry : batch) {
+            if (entry.deadline() == null) {
+                return null;
+            }
+            if (latest == null || entry.deadline() - latest > 0) {
+                latest = entry.deadline();
+            }
+        }
+        return latest;
+    }
+
+    private void flush(BigInteger block, List<Pending> batch, RpcWorkload workload, RpcPriority priority,
+                       Long deadline) {
+        batchSize.record(batch.size());
+        rpcCalls.submit(workload, priority, deadline, () -> {
+            execute(block, batch);
+            return null;
+        }).whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                batch.forEach(entry -> entry.future().completeExceptionally(throwable));
+            }
+        });
+    }
+
+    private void execute(BigInteger block, List<Pending> batch) throws IOException {
+        if (batch.size() == 1) {
+            Pending entry = batch.get(0);
+            entry.future().complete(sendSingle(entry, block));
+        } else if (isDeployed()) {
+            aggregate(block, batch);
+        } else {
+            fallbacks.increment();
+            sendBatch(block, batch);
+        }
+    }
+
+    private void aggregate(BigInteger block, List<Pending> batch) throws IOException {
+        String data = Multicall3Codec.encodeAggregate3(batch.stream().map(Pending::call).toList());
+        EthCall response = ethCall(multicallAddress, data, block).send();
+        if (response.hasError()) {
+            throw new IOException("aggregate3 failed: " + response.getError().getMessage());
+        }
+        List<Multicall3Codec.Result> results = Multicall3Codec.decodeAggregate3(response.getValue());
+        if (results.size() != batch.size()) {
+            throw new IOException("aggregate3 returned " + results.size() + " results for " + batch.size() + " calls");
+        }
+        aggregated.increment(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Multicall3Codec.Result result = results.get(i);
+            if (result.success()) {
+                batch.get(i).future().complete(Numeric.toHexString(result.returnData()));
+            } else {
+                batch.get(i).future().completeExceptionally(new ContractCallException(
+                        "Contract call reverted: " + Numeric.toHexString(result.returnData())));
+            }
+        }
+    }
+
+    private void sendBatch(BigInteger block, List<Pending> batch) throws IOException {
+        BatchRequest request = web3j.newBatch();
+        List<Request<?, EthCall>> requests = new ArrayList<>(batch.size());
+        for (Pending entry : batch) {
+            Request<?, EthCall> call = ethCall(entry.call().target(), entry.callData(), block);
+            requests.add(call);
+            request.add(call);
+        }
+        BatchResponse response = request.send();
+        Map<Long, Response<?>> byId = new HashMap<>();
+        for (Response<?> item : response.getResponses()) {
+            byId.put(item.getId(), item);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            CompletableFuture<String> future = batch.get(i).future();
+            if (!(byId.get(requests.get(i).getId()) instanceof EthCall result)) {
+                future.completeExceptionally(new IOException("No response in batch for eth_call " + requests.get(i).getId()));
+            } else if (result.hasError()) {
+                future.completeExceptionally(new IOException("eth_call failed: " + result.getError().getMessage()));
+            } else if (result.isReverted()) {
+                future.completeExceptionally(new ContractCallException(result.getRevertReason()));
+            } else {
+                future.complete(result.getValue());
+            }
+        }
+    }
+
+    private String sendSingle(Pending entry, BigInteger block) throws IOException {
+        EthCall result = ethCall(entry.call().target(), entry.callData(), block).send();
+        if (result.hasError()) {
+            throw new IOException("eth_call failed: " + result.getError().getMessage());
+        }
+        if (result.isReverted()) {
+            throw new ContractCallException(result.getRevertReason());
+        }
+        return result.getValue();
+    }
+
+    private boolean isDeployed() throws IOException {
+        Probe known = deployed;
+        if (known != null && System.nanoTime() - known.checkedAt() < probeTtlNanos) {
+            return known.present();
+        }
+        EthGetCode code = web3j.ethGetCode(multicallAddress, DefaultBlockParameterName.LATEST).send();
+        if (code.hasError()) {
+            throw new IOException("eth_getCode failed: " + code.getError().getMessage());
+        }
+        boolean present = code.getCode() != null && Numeric.cleanHexPrefix(code.getCode()).length() > 0;
+        if (!present && (known == null || known.present())) {
+            log.warn("No Multicall3 at {}, falling back to JSON-RPC batches of eth_call", multicallAddress);
+        }
+        deployed = new Probe(present, System.nanoTime());
+        return present;
+    }
+
+    private Request<?, EthCall> ethCall(String to, String data, BigInteger block) {
+        DefaultBlockParameter at = block != null ? DefaultBlockParameter.valueOf(block) : DefaultBlockParameterName.LATEST;
+        return web3j.ethCall(Transaction.createEthCallTransaction(null, to, data), at);
+    }
+
+    private record Pending(Multicall3Codec.Call call, String callData, RpcPriority priority, Long deadline,
+                           CompletableFuture<String> future) {
+    }
+
+    private record Probe(boolean present, long checkedAt) {
+    }
+}
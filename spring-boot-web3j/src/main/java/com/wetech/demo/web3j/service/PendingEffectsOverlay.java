@@ -0,0 +1,135 @@
+package com.wetech.demo.web3j.service;
+
+import com.wetech.demo.web3j.contracts.erc20test.ERC20Test;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Balance changes of our own confirmed transactions that reads may not reflect yet.
+ * <p>
+ * A receipt arrives as soon as its block is mined, while the balance cache is still valid at an
+ * earlier head until the head tracker delivers that block. The {@code Transfer} logs of each
+ * successful receipt are recorded here as per-account deltas at the receipt's block; a read at an
+ * earlier block can opt in to have them added. Effects are dropped once {@link BalanceCache} has
+ * applied a head at or past their block, as reads at that head already include them, or after
+ * {@code ttlMs} if no head arrives. Dropping them on the head tracker's own notification could
+ * run before the cache's, leaving reads with neither the effect nor the refreshed balance.
+ */
+@Slf4j
+@Service
+public class PendingEffectsOverlay {
+
+    private static final String ZERO_ADDRESS = "0x0000000000000000000000000000000000000000";
+
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final Map<AccountKey, List<Effect>> effects = new ConcurrentHashMap<>();
+    private final Counter projected;
+
+    public PendingEffectsOverlay(MeterRegistry meterRegistry,
+                                 @Value("${web3j.pending-effects.enabled:true}") boolean enabled,
+                                 @Value("${web3j.pending-effects.ttl-ms:60000}") long ttlMs) {
+        this.enabled = enabled;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.projected = Counter.builder("web3j.pending_effects.projected")
+                .description("Reads answered with balance changes of transactions not yet reflected")
+                .register(meterRegistry);
+        Gauge.builder("web3j.pending_effects", effects, Map::size)
+                .description("Accounts with recorded balance changes waiting for their block")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Record the balance changes of a successful transaction.
+     */
+    public void record(TransactionReceipt receipt) {
+        if (!enabled || !receipt.isStatusOK() || receipt.getBlockNumber() == null) {
+            return;
+        }
+        long expiresAt = System.nanoTime() + ttlNanos;
+        for (ERC20Test.TransferEventResponse transfer : ERC20Test.getTransferEvents(receipt)) {
+            String contract = transfer.log.getAddress().toLowerCase();
+            add(new AccountKey(contract, transfer.from.toLowerCase()),
+                    new Effect(transfer.value.negate(), receipt.getBlockNumber(), expiresAt));
+            add(new AccountKey(contract, transfer.to.toLowerCase()),
+                    new Effect(transfer.value, receipt.getBlockNumber(), expiresAt));
+        }
+    }
+
+    /**
+     * Add the recorded changes from blocks after the one {@code balance} was read at. The block
+     * reported stays that of the read; a balance read without a known block is returned as is,
+     * since there is no telling which changes it already includes.
+     */
+    public BlockValue<BigInteger> project(String contractAddress, String account, BlockValue<BigInteger> balance) {
+        if (!enabled || balance.blockNumber() == null) {
+            return balance;
+        }
+        List<Effect> pending = effects.get(new AccountKey(contractAddress.toLowerCase(), account.toLowerCase()));
+        if (pending == null) {
+            return balance;
+        }
+        long now = System.nanoTime();
+        BigInteger value = balance.value();
+        boolean changed = false;
+        for (Effect effect : pending) {
+            if (effect.blockNumber().compareTo(balance.blockNumber()) > 0 && now - effect.expiresAt() < 0) {
+                value = value.add(effect.delta());
+                changed = true;
+            }
+        }
+        if (!changed) {
+            return balance;
+        }
+        projected.increment();
+        return new BlockValue<>(value, balance.blockNumber());
+    }
+
+    /**
+     * Drop the effects included in reads at {@code head}; called once the balance cache has
+     * invalidated the entries the blocks up to it changed.
+     */
+    public void onHeadApplied(BigInteger head) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        effects.replaceAll((key, pending) -> pending.stream()
+                .filter(effect -> effect.blockNumber().compareTo(head) > 0 && now - effect.expiresAt() < 0)
+                .toList());
+        effects.values().removeIf(List::isEmpty);
+    }
+
+    private void add(AccountKey key, Effect effect) {
+        if (key.account().equals(ZERO_ADDRESS)) {
+            return;
+        }
+        long now = System.nanoTime();
+        effects.compute(key, (ignored, pending) -> {
+            List<Effect> updated = new ArrayList<>();
+            if (pending != null) {
+                pending.stream().filter(existing -> now - existing.expiresAt() < 0).forEach(updated::add);
+            }
+            updated.add(effect);
+            return List.copyOf(updated);
+        });
+    }
+
+    private record AccountKey(String contract, String account) {
+    }
+
+    private record Effect(BigInteger delta, BigInteger blockNumber, long expiresAt) {
+    }
+}
@@ -1,16 +1,24 @@
 package com.wetech.demo.web3j.service;
 
 import com.wetech.demo.web3j.contracts.simplestorage.SimpleStorage;
+import com.wetech.demo.web3j.rpc.RpcCalls;
+import com.wetech.demo.web3j.rpc.RpcPriority;
+import io.reactivex.Flowable;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.web3j.abi.datatypes.Type;
 import org.web3j.crypto.Credentials;
 import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.RemoteFunctionCall;
 import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.tx.TransactionManager;
+import org.web3j.tx.exceptions.ContractCallException;
 import org.web3j.tx.gas.ContractGasProvider;
 
 import java.math.BigInteger;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 @Slf4j
@@ -21,6 +29,11 @@ public class SimpleStorageService {
     private final Web3j web3j;
     private final Credentials credentials;
     private final ContractGasProvider gasProvider;
+    private final TransactionManager transactionManager;
+    private final ContractEventSource eventSource;
+    private final RpcCalls rpcCalls;
+    private final MulticallBatcher multicallBatcher;
+    private final StoredValueCache valueCache;
     
     private SimpleStorage contract;
     /**
@@ -38,10 +51,10 @@ public class SimpleStorageService {
      */
     public CompletableFuture<String> deployContract() {
         log.info("Deploying SimpleStorage contract...");
-        return SimpleStorage.deploy(web3j, credentials, gasProvider)
-                .sendAsync()
+        return rpcCalls.send(RpcPriority.TRANSACTION, SimpleStorage.deploy(web3j, credentials, gasProvider))
                 .thenApply(contract -> {
-                    this.contract = contract;
+                    // Deployment waits for its receipt; later transactions go through the submit-only manager
+                    this.contract = SimpleStorage.load(contract.getContractAddress(), web3j, transactionManager, gasProvider);
                     this.contractAddress = contract.getContractAddress();
                     log.info("SimpleStorage contract deployed to: {}", contractAddress);
                     return contractAddress;
@@ -54,7 +67,7 @@ public class SimpleStorageService {
      */
     public void loadContract(String contractAddress) {
         log.info("Loading SimpleStorage contract from address: {}", contractAddress);
-        this.contract = SimpleStorage.load(contractAddress, web3j, credentials, gasProvider);
+        this.contract = SimpleStorage.load(contractAddress, web3j, transactionManager, gasProvider);
         this.contractAddress = contractAddress;
     }
 
@@ -63,11 +76,31 @@ public class SimpleStorageService {
      * @return the stored value
      */
     public CompletableFuture<BigInteger> getValue() {
-        if (contract == null) {
+        return getValue(0).thenApply(BlockValue::value);
+    }
+
+    /**
+     * Get the stored value, accepting a cached value from up to {@code maxStaleBlocks} blocks
+     * behind the head while it is refreshed in the background
+     * @param maxStaleBlocks how stale a value may be, in blocks; 0 always reads at the head
+     * @return the stored value and the block it was read at
+     */
+    public CompletableFuture<BlockValue<BigInteger>> getValue(long maxStaleBlocks) {
+        SimpleStorage storage = contract;
+        if (storage == null) {
             throw new IllegalStateException("Contract not deployed or loaded");
         }
-        log.info("Getting value from contract at address: {}", contractAddress);
-        return contract.get().sendAsync();
+        log.info("Getting value from contract at address: {}", storage.getContractAddress());
+        RemoteFunctionCall<BigInteger> call = storage.get();
+        return valueCache.value(storage.getContractAddress(), block -> multicallBatcher
+                .call(storage.getContractAddress(), call.encodeFunctionCall(), block)
+                .thenApply(result -> {
+                    List<Type> decoded = call.decodeFunctionResponse(result);
+                    if (decoded.isEmpty()) {
+                        throw new ContractCallException("Empty response from " + storage.getContractAddress());
+                    }
+                    return (BigInteger) decoded.get(0).getValue();
+                }), maxStaleBlocks);
     }
 
     /**
@@ -80,6 +113,18 @@ public class SimpleStorageService {
             throw new IllegalStateException("Contract not deployed or loaded");
         }
         log.info("Setting value {} in contract at address: {}", value, contractAddress);
-        return contract.set(value).sendAsync();
+        return rpcCalls.transact(contract.set(value));
+    }
+
+    /**
+     * Stream DataChanged events of the loaded contract, pushed over WebSocket when available
+     * @return the events as they are emitted
+     */
+    public Flowable<SimpleStorage.DataChangedEventResponse> dataChangedEvents() {
+        if (contract == null) {
+            throw new IllegalStateException("Contract not deployed or loaded");
+        }
+        return eventSource.logs(contractAddress, SimpleStorage.DATACHANGED_EVENT)
+                .map(SimpleStorage::getDataChangedEventFromLog);
     }
-}
\ No newline at end of file
+}
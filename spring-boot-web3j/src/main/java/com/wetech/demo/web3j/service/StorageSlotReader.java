@@ -0,0 +1,305 @@
+package com.wetech.demo.web3j.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.wetech.demo.web3j.contracts.erc20test.ERC20Test;
+import com.wetech.demo.web3j.rpc.RpcCalls;
+import com.wetech.demo.web3j.rpc.RpcContext;
+import com.wetech.demo.web3j.rpc.RpcPriority;
+import com.wetech.demo.web3j.rpc.RpcWorkload;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.crypto.Hash;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.protocol.core.methods.response.EthGetStorageAt;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reads ERC20 balances and allowances straight from contract storage.
+ * <p>
+ * OpenZeppelin's {@code ERC20} keeps {@code _balances} at slot 0 and {@code _allowances} at slot
+ * 1, so the balance of an account is stored at {@code keccak256(pad(account) ++ pad(0))} and an
+ * allowance at {@code keccak256(pad(spender) ++ keccak256(pad(owner) ++ pad(1)))}. Slots are
+ * computed locally and sent as one JSON-RPC batch of {@code eth_getStorageAt}, with no ABI
+ * encoding and no EVM execution on the node. A storage word and a {@code uint256} return value
+ * share the same encoding, so results are interchangeable with those of an {@code eth_call}.
+ * <p>
+ * Other implementations keep their mappings elsewhere (Solmate: balances at slot 3, allowances at
+ * slot 4) and a proxy can be upgraded to another layout, so every chunk is checked: the same
+ * batch calls the view function ({@code balanceOf} or {@code allowance}) for its first entry, and
+ * the chunk is answered from storage only if both agree. Two zeros prove nothing, as every unused
+ * slot reads zero; the chunk then relies on a nonzero match seen within {@code layoutTtlMs}, or
+ * checks one entry whose slot is not zero. Chunks that cannot be confirmed are read through
+ * {@link MulticallBatcher}, and after a mismatch so is that mapping of the contract, until the
+ * verdict expires. Balances and allowances are checked separately.
+ */
+@Slf4j
+@Service
+public class StorageSlotReader {
+
+    private static final BigInteger BALANCES_SLOT = BigInteger.ZERO;
+    private static final BigInteger ALLOWANCES_SLOT = BigInteger.ONE;
+
+    private final Web3j web3j;
+    private final RpcCalls rpcCalls;
+    private final MulticallBatcher multicallBatcher;
+    private final boolean enabled;
+
+    /** Whether a mapping of a contract was recently found at its OpenZeppelin slot */
+    private final Cache<Layout, Boolean> layouts;
+
+    private final Counter slotReads;
+    private final Counter fallbacks;
+
+    public StorageSlotReader(Web3j web3j, RpcCalls rpcCalls, MulticallBatcher multicallBatcher,
+                             MeterRegistry meterRegistry,
+                             @Value("${web3j.storage-reads.enabled:true}") boolean enabled,
+                             @Value("${web3j.storage-reads.layout-ttl-ms:600000}") long layoutTtlMs) {
+        this.web3j = web3j;
+        this.rpcCalls = rpcCalls;
+        this.multicallBatcher = multicallBatcher;
+        this.enabled = enabled;
+        this.layouts = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(layoutTtlMs))
+                .maximumSize(10_000)
+                .build();
+        this.slotReads = Counter.builder("web3j.storage_reads.slots")
+                .description("Balances and allowances read with eth_getStorageAt")
+                .register(meterRegistry);
+        this.fallbacks = Counter.builder("web3j.storage_reads.fallbacks")
+                .description("Balances and allowances read with contract calls because the storage layout "
+                        + "was not confirmed")
+                .register(meterRegistry);
+    }
+
+    public record Allowance(String owner, String spender) {
+    }
+
+    /**
+     * @param block    block to read at, or {@code null} for latest
+     * @param workload executor the reads run on
+     * @return each balance as a hex encoded 32-byte word, in the order of {@code accounts}
+     */
+    public List<CompletableFuture<String>> balances(String contractAddress, List<String> accounts, BigInteger block,
+                                                    RpcWorkload workload, RpcPriority priority) {
+        return read(contractAddress, Mapping.BALANCES, block, workload, priority,
+                accounts.stream().map(StorageSlotReader::balanceSlot).toList(),
+                accounts.stream().map(account -> call(ERC20Test.FUNC_BALANCEOF, new Address(account))).toList());
+    }
+
+    /**
+     * @param block    block to read at, or {@code null} for latest
+     * @param workload executor the reads run on
+     * @return each allowance as a hex encoded 32-byte word, in the order of {@code allowances}
+     */
+    public List<CompletableFuture<String>> allowances(String contractAddress, List<Allowance> allowances,
+                                                      BigInteger block, RpcWorkload workload, RpcPriority priority) {
+        return read(contractAddress, Mapping.ALLOWANCES, block, workload, priority,
+                allowances.stream().map(StorageSlotReader::allowanceSlot).toList(),
+                allowances.stream().map(allowance -> call(ERC20Test.FUNC_ALLOWANCE,
+                        new Address(allowance.owner()), new Address(allowance.spender()))).toList());
+    }
+
+    static BigInteger balanceSlot(String account) {
+        return mappingSlot(account, BALANCES_SLOT);
+    }
+
+    static BigInteger allowanceSlot(Allowance allowance) {
+        return mappingSlot(allowance.spender(), mappingSlot(allowance.owner(), ALLOWANCES_SLOT));
+    }
+
+    /**
+     * Solidity places {@code mapping[key]} declared at {@code slot} at {@code keccak256(pad(key) ++ pad(slot))}.
+     */
+    private static BigInteger mappingSlot(String address, BigInteger slot) {
+        byte[] preimage = new byte[64];
+        byte[] key = Numeric.toBytesPadded(Numeric.toBigInt(address), 32);
+        System.arraycopy(key, 0, preimage, 0, 32);
+        System.arraycopy(Numeric.toBytesPadded(slot, 32), 0, preimage, 32, 32);
+        return Numeric.toBigInt(Hash.sha3(preimage));
+    }
+
+    private List<CompletableFuture<String>> read(String contractAddress, Mapping mapping, BigInteger block,
+                                                 RpcWorkload workload, RpcPriority priority, List<BigInteger> slots,
+                                                 List<String> calls) {
+        Layout layout = new Layout(contractAddress.toLowerCase(), mapping);
+        Long deadline = RpcContext.deadline();
+        List<CompletableFuture<String>> results =
+                slots.stream().map(slot -> new CompletableFuture<String>()).toList();
+        if (slots.isEmpty()) {
+            return results;
+        }
+        rpcCalls.submit(workload, priority, deadline, () -> read(layout, slots, calls, block, results))
+                .whenComplete((answered, throwable) -> {
+                    if (throwable != null) {
+                        results.forEach(result -> result.completeExceptionally(throwable));
+                    } else if (!answered) {
+                        fallback(layout.contract(), calls, block, workload, priority, deadline, results);
+                    }
+                });
+        return results;
+    }
+
+    /**
+     * Compare the slot of one entry with what the view function ({@code balanceOf} or
+     * {@code allowance}) returns for it at the same block.
+     *
+     * @return whether the mapping is at the expected slot, or {@code null} if this entry cannot
+     * tell: either value is missing, or both are zero
+     */
+    static Boolean checkLayout(String slotWord, String viewResult) {
+        if (slotWord == null || viewResult == null || Numeric.cleanHexPrefix(viewResult).isEmpty()) {
+            return null;
+        }
+        BigInteger reported = Numeric.toBigInt(viewResult);
+        if (!reported.equals(Numeric.toBigInt(slotWord))) {
+            return false;
+        }
+        return reported.signum() != 0 ? true : null;
+    }
+
+    /**
+     * @return whether {@code results} were answered from storage; if not, the layout was not
+     * confirmed and they are left to {@link #fallback}
+     */
+    private boolean read(Layout layout, List<BigInteger> slots, List<String> calls, BigInteger block,
+                         List<CompletableFuture<String>> results) throws IOException {
+        Boolean known = layouts.getIfPresent(layout);
+        if (!enabled || Boolean.FALSE.equals(known)) {
+            return false;
+        }
+        String contract = layout.contract();
+        BatchRequest batch = web3j.newBatch();
+        List<Request<?, EthGetStorageAt>> requests = new ArrayList<>(slots.size());
+        for (BigInteger slot : slots) {
+            Request<?, EthGetStorageAt> request = web3j.ethGetStorageAt(contract, slot, at(block));
+            requests.add(request);
+            batch.add(request);
+        }
+        Request<?, EthCall> sample = ethCall(contract, calls.get(0), block);
+        batch.add(sample);
+        Map<Long, Response<?>> byId = byId(batch.send());
+        List<String> words = requests.stream()
+                .map(request -> byId.get(request.getId()) instanceof EthGetStorageAt stored && !stored.hasError()
+                        ? stored.getData() : null)
+                .toList();
+
+        Boolean verdict = checkLayout(words.get(0), value(byId.get(sample.getId())));
+        if (verdict == null && !Boolean.TRUE.equals(known)) {
+            // Zero on both sides; confirm with an entry that is nonzero in this layout, if any
+            for (int i = 1; i < words.size(); i++) {
+                if (words.get(i) != null && Numeric.toBigInt(words.get(i)).signum() != 0) {
+                    verdict = checkLayout(words.get(i), value(ethCall(contract, calls.get(i), block).send()));
+                    break;
+                }
+            }
+        }
+        if (verdict != null) {
+            if (!verdict.equals(known)) {
+                log.info("{} of {} {}", layout.mapping().label, contract, verdict
+                        ? "match the OpenZeppelin storage layout, reading slots directly"
+                        : "do not match the OpenZeppelin storage layout, reading them with contract calls");
+            }
+            layouts.put(layout, verdict);
+        }
+        if (!(verdict != null ? verdict : Boolean.TRUE.equals(known))) {
+            return false;
+        }
+        slotReads.increment(words.size());
+        for (int i = 0; i < words.size(); i++) {
+            if (words.get(i) != null) {
+                results.get(i).complete(words.get(i));
+            } else {
+                results.get(i).completeExceptionally(new IOException(
+                        "eth_getStorageAt failed for slot " + Numeric.toHexStringWithPrefix(slots.get(i))));
+            }
+        }
+        return true;
+    }
+
+    private void fallback(String contract, List<String> calls, BigInteger block, RpcWorkload workload,
+                          RpcPriority priority, Long deadline, List<CompletableFuture<String>> results) {
+        fallbacks.increment(calls.size());
+        List<CompletableFuture<String>> called = multicallBatcher.callAll(contract, calls, block, workload,
+                priority, deadline);
+        for (int i = 0; i < called.size(); i++) {
+            CompletableFuture<String> result = results.get(i);
+            called.get(i).whenComplete((value, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+        }
+    }
+
+    private Request<?, EthCall> ethCall(String contract, String data, BigInteger block) {
+        return web3j.ethCall(Transaction.createEthCallTransaction(null, contract, data), at(block));
+    }
+
+    /**
+     * @return the return data of a successful {@code eth_call}, or {@code null}
+     */
+    private static String value(Response<?> response) {
+        return response instanceof EthCall called && !called.hasError() && !called.isReverted()
+                ? called.getValue() : null;
+    }
+
+    private static Map<Long, Response<?>> byId(BatchResponse response) {
+        Map<Long, Response<?>> byId = new HashMap<>();
+        for (Response<?> item : response.getResponses()) {
+            byId.put(item.getId(), item);
+        }
+        return byId;
+    }
+
+    private static String call(String name, Type... inputs) {
+        return FunctionEncoder.encode(new Function(name, List.<Type>of(inputs),
+                List.<TypeReference<?>>of(new TypeReference<Uint256>() {})));
+    }
+
+    private static DefaultBlockParameter at(BigInteger block) {
+        return block != null ? DefaultBlockParameter.valueOf(block) : DefaultBlockParameterName.LATEST;
+    }
+
+    private enum Mapping {
+        BALANCES("Balances"),
+        ALLOWANCES("Allowances");
+
+        private final String label;
+
+        Mapping(String label) {
+            this.label = label;
+        }
+    }
+
+    private record Layout(String contract, Mapping mapping) {
+    }
+}
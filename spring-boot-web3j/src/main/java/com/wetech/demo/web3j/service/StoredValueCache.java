@@ -0,0 +1,61 @@
+package com.wetech.demo.web3j.service;
+
+import com.wetech.demo.web3j.contracts.simplestorage.SimpleStorage;
+import com.wetech.demo.web3j.rpc.LogStreamReader;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.web3j.abi.EventEncoder;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * SimpleStorage values keyed by contract; a {@code DataChanged} in a new block drops the entry.
+ */
+@Service
+public class StoredValueCache extends HeadScopedCache<String, BigInteger> {
+
+    private static final String DATA_CHANGED_TOPIC = EventEncoder.encode(SimpleStorage.DATACHANGED_EVENT);
+
+    public StoredValueCache(LogStreamReader logStreamReader, ChainHeadTracker headTracker, MeterRegistry meterRegistry,
+                            @Value("${web3j.cache.storage.enabled:true}") boolean enabled,
+                            @Value("${web3j.cache.storage.max-size:1000}") long maxSize,
+                            @Value("${web3j.cache.max-invalidation-range:128}") long maxInvalidationRange) {
+        super("storage.value", logStreamReader, headTracker, meterRegistry, enabled, maxSize, maxInvalidationRange);
+    }
+
+    /**
+     * @param loader         reads the value at the given block, or at latest when given {@code null}
+     * @param maxStaleBlocks how many blocks behind the head a value may be to be served immediately
+     */
+    public CompletableFuture<BlockValue<BigInteger>> value(String contractAddress,
+                                                           Function<BigInteger, CompletableFuture<BigInteger>> loader,
+                                                           long maxStaleBlocks) {
+        return read(contractAddress.toLowerCase(), loader, maxStaleBlocks);
+    }
+
+    @Override
+    protected String contractOf(String key) {
+        return key;
+    }
+
+    @Override
+    protected List<String> topics() {
+        return List.of(DATA_CHANGED_TOPIC);
+    }
+
+    @Override
+    protected Runnable updateFor(List<Log> logs) {
+        Set<String> touched = new HashSet<>();
+        for (Log log : logs) {
+            touched.add(log.getAddress().toLowerCase());
+        }
+        return () -> invalidate(touched);
+    }
+}
@@ -0,0 +1,9 @@
+package com.wetech.demo.web3j.service;
+
+import java.math.BigInteger;
+
+/**
+ * The immutable part of an ERC20 token's description, fixed at deployment.
+ */
+public record TokenMetadata(String name, String symbol, BigInteger decimals) {
+}
@@ -0,0 +1,156 @@
+package com.wetech.demo.web3j.service;
+
+import com.wetech.demo.web3j.contracts.erc20test.ERC20Test;
+import com.wetech.demo.web3j.rpc.LogStreamReader;
+import com.wetech.demo.web3j.rpc.RpcCalls;
+import com.wetech.demo.web3j.rpc.RpcPriority;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.web3j.abi.EventEncoder;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Running totalSupply per contract, read once and then moved by mint and burn {@code Transfer}
+ * logs (from and to the zero address) of every new block.
+ * <p>
+ * Every {@code reconcileBlocks} heads the tracked value is compared in the background with
+ * {@code totalSupply()} at the same block; a mismatch is counted in
+ * {@code web3j.cache.total_supply.drift}, logged, and replaced by the value from the chain.
+ */
+@Slf4j
+@Service
+public class TotalSupplyTracker extends HeadScopedCache<String, BigInteger> {
+
+    private static final String TRANSFER_TOPIC = EventEncoder.encode(ERC20Test.TRANSFER_EVENT);
+    private static final String ZERO_ADDRESS = "0x0000000000000000000000000000000000000000";
+
+    private final Web3j web3j;
+    private final RpcCalls rpcCalls;
+    private final long reconcileBlocks;
+    private final Counter drift;
+
+    public TotalSupplyTracker(Web3j web3j, LogStreamReader logStreamReader, RpcCalls rpcCalls, ChainHeadTracker headTracker,
+                              MeterRegistry meterRegistry,
+                              @Value("${web3j.cache.total-supply.enabled:true}") boolean enabled,
+                              @Value("${web3j.cache.total-supply.reconcile-blocks:50}") long reconcileBlocks,
+                              @Value("${web3j.cache.max-invalidation-range:128}") long maxInvalidationRange) {
+        super("erc20.total_supply", logStreamReader, headTracker, meterRegistry, enabled, 1000, maxInvalidationRange);
+        this.web3j = web3j;
+        this.rpcCalls = rpcCalls;
+        this.reconcileBlocks = Math.max(1, reconcileBlocks);
+        this.drift = Counter.builder("web3j.cache.total_supply.drift")
+                .description("Reconciliations that found the tracked totalSupply out of line with the chain")
+                .register(meterRegistry);
+    }
+
+    public CompletableFuture<BlockValue<BigInteger>> totalSupply(String contractAddress) {
+        String contract = contractAddress.toLowerCase();
+        return read(contract, block -> rpcCalls.submit(RpcPriority.INTERACTIVE, () -> readTotalSupply(contract, block)), 0);
+    }
+
+    @Override
+    public void onHead(BigInteger head) {
+        super.onHead(head);
+        if (head.mod(BigInteger.valueOf(reconcileBlocks)).signum() == 0) {
+            reconcile();
+        }
+    }
+
+    @Override
+    protected String contractOf(String contract) {
+        return contract;
+    }
+
+    @Override
+    protected List<String> topics() {
+        return List.of(TRANSFER_TOPIC);
+    }
+
+    @Override
+    protected Runnable updateFor(List<Log> logs) {
+        Map<String, BigInteger> deltas = new HashMap<>();
+        for (Log log : logs) {
+            ERC20Test.TransferEventResponse event = ERC20Test.getTransferEventFromLog(log);
+            String contract = log.getAddress().toLowerCase();
+            if (ZERO_ADDRESS.equalsIgnoreCase(event.from)) {
+                deltas.merge(contract, event.value, BigInteger::add);
+            }
+            if (ZERO_ADDRESS.equalsIgnoreCase(event.to)) {
+                deltas.merge(contract, event.value.negate(), BigInteger::add);
+            }
+        }
+        // Also applies to loads still in flight: they read the previous head, which the deltas start from
+        return () -> deltas.forEach((contract, delta) -> cache.asMap()
+                .computeIfPresent(contract, (key, supply) -> supply.thenApply(value -> value.add(delta))));
+    }
+
+    private void reconcile() {
+        BigInteger block = validHead();
+        if (block == null) {
+            return;
+        }
+        for (String contract : List.copyOf(cache.asMap().keySet())) {
+            rpcCalls.submit(RpcPriority.BACKGROUND, () -> readTotalSupply(contract, block))
+                    .thenAccept(actual -> correct(contract, block, actual))
+                    .exceptionally(throwable -> {
+                        log.warn("Could not reconcile totalSupply of {}: {}", contract, throwable.getMessage());
+                        return null;
+                    });
+        }
+    }
+
+    private void correct(String contract, BigInteger block, BigInteger actual) {
+        CompletableFuture<BigInteger> tracked = cache.getIfPresent(contract);
+        if (tracked == null || !tracked.isDone() || tracked.isCompletedExceptionally()
+                || !block.equals(validHead())) {
+            // Still loading, or moved on to a later head; the next round will check it
+            return;
+        }
+        BigInteger value = tracked.join();
+        if (value.equals(actual)) {
+            return;
+        }
+        // Only replace the value that was compared; a head applied meanwhile has already moved it
+        if (cache.asMap().replace(contract, tracked, CompletableFuture.completedFuture(actual))) {
+            drift.increment();
+            log.warn("Tracked totalSupply of {} was {} but is {} at block {}", contract, value, actual, block);
+        }
+    }
+
+    private BigInteger readTotalSupply(String contract, BigInteger block) throws IOException {
+        Function function = new Function(ERC20Test.FUNC_TOTALSUPPLY, List.of(),
+                List.<TypeReference<?>>of(new TypeReference<Uint256>() {}));
+        DefaultBlockParameter at = block != null ? DefaultBlockParameter.valueOf(block) : DefaultBlockParameterName.LATEST;
+        EthCall response = web3j.ethCall(Transaction.createEthCallTransaction(null, contract,
+                FunctionEncoder.encode(function)), at).send();
+        if (response.hasError()) {
+            throw new IOException("totalSupply failed: " + response.getError().getMessage());
+        }
+        List<Type> decoded = FunctionReturnDecoder.decode(response.getValue(), function.getOutputParameters());
+        if (decoded.isEmpty()) {
+            throw new IOException("totalSupply returned no value at block " + block);
+        }
+        return (BigInteger) decoded.get(0).getValue();
+    }
+}
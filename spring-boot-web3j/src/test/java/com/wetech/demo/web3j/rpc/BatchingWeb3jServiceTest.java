@@ -0,0 +1,155 @@
+package com.wetech.demo.web3j.rpc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BatchingWeb3jServiceTest {
+
+    private final Web3jService delegate = mock(Web3jService.class);
+    // A long window, so batches are only flushed by reaching the maximum size of 3
+    private final BatchingWeb3jService service = new BatchingWeb3jService(delegate, Set.of("eth_blockNumber"),
+            Duration.ofSeconds(10), 3, 2, new SimpleMeterRegistry());
+
+    @AfterEach
+    void close() throws IOException {
+        service.close();
+    }
+
+    @Test
+    void routesResponsesBackByIdWhateverTheirOrder() throws Exception {
+        when(delegate.sendBatch(any())).thenAnswer(invocation -> {
+            List<Response<?>> responses = new ArrayList<>();
+            for (Request<?, ?> request : ((BatchRequest) invocation.getArgument(0)).getRequests()) {
+                responses.add(blockNumber(request.getId()));
+            }
+            Collections.reverse(responses);
+            return new BatchResponse(((BatchRequest) invocation.getArgument(0)).getRequests(), responses);
+        });
+
+        List<Request<?, EthBlockNumber>> requests = List.of(request(), request(), request());
+        List<CompletableFuture<EthBlockNumber>> futures = requests.stream()
+                .map(request -> service.sendAsync(request, EthBlockNumber.class))
+                .toList();
+
+        for (int i = 0; i < requests.size(); i++) {
+            EthBlockNumber response = futures.get(i).get(5, TimeUnit.SECONDS);
+            assertThat(response.getId()).isEqualTo(requests.get(i).getId());
+            assertThat(response.getBlockNumber()).isEqualTo(BigInteger.valueOf(requests.get(i).getId()));
+        }
+    }
+
+    @Test
+    void failsOnlyTheRequestsMissingFromTheBatchResponse() throws Exception {
+        when(delegate.sendBatch(any())).thenAnswer(invocation -> {
+            List<Request<?, ?>> sent = List.copyOf(((BatchRequest) invocation.getArgument(0)).getRequests());
+            return new BatchResponse(((BatchRequest) invocation.getArgument(0)).getRequests(),
+                    List.of(blockNumber(sent.get(0).getId()), blockNumber(sent.get(1).getId())));
+        });
+
+        CompletableFuture<EthBlockNumber> first = service.sendAsync(request(), EthBlockNumber.class);
+        CompletableFuture<EthBlockNumber> second = service.sendAsync(request(), EthBlockNumber.class);
+        CompletableFuture<EthBlockNumber> missing = service.sendAsync(request(), EthBlockNumber.class);
+
+        assertThat(first.get(5, TimeUnit.SECONDS).hasError()).isFalse();
+        assertThat(second.get(5, TimeUnit.SECONDS).hasError()).isFalse();
+        assertThatThrownBy(() -> missing.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(IOException.class)
+                .hasMessageContaining("No response in batch");
+    }
+
+    @Test
+    void sendsTheBatchWithTheLatestDeadlineOfItsCallers() throws Exception {
+        AtomicReference<Long> seen = new AtomicReference<>();
+        when(delegate.sendBatch(any())).thenAnswer(invocation -> {
+            seen.set(RpcContext.deadline());
+            return answerAll(invocation.getArgument(0));
+        });
+        long now = System.nanoTime();
+        long latest = now + TimeUnit.SECONDS.toNanos(30);
+
+        List<CompletableFuture<EthBlockNumber>> futures = List.of(
+                RpcContext.call(RpcPriority.INTERACTIVE, latest,
+                        () -> service.sendAsync(request(), EthBlockNumber.class)),
+                RpcContext.call(RpcPriority.INTERACTIVE, now + TimeUnit.SECONDS.toNanos(5),
+                        () -> service.sendAsync(request(), EthBlockNumber.class)),
+                RpcContext.call(RpcPriority.BACKGROUND, now + TimeUnit.SECONDS.toNanos(10),
+                        () -> service.sendAsync(request(), EthBlockNumber.class)));
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        assertThat(seen.get()).isEqualTo(latest);
+    }
+
+    @Test
+    void sendsTheBatchWithoutDeadlineWhenOneCallerHasNone() throws Exception {
+        AtomicReference<Long> seen = new AtomicReference<>(0L);
+        when(delegate.sendBatch(any())).thenAnswer(invocation -> {
+            seen.set(RpcContext.deadline());
+            return answerAll(invocation.getArgument(0));
+        });
+        long now = System.nanoTime();
+
+        List<CompletableFuture<EthBlockNumber>> futures = List.of(
+                RpcContext.call(RpcPriority.INTERACTIVE, now + TimeUnit.SECONDS.toNanos(5),
+                        () -> service.sendAsync(request(), EthBlockNumber.class)),
+                RpcContext.call(RpcPriority.BACKGROUND, null,
+                        () -> service.sendAsync(request(), EthBlockNumber.class)),
+                service.sendAsync(request(), EthBlockNumber.class));
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        assertThat(seen.get()).isNull();
+    }
+
+    @Test
+    void failsACallerOnItsOwnDeadlineWhileTheBatchWaits() throws Exception {
+        CompletableFuture<EthBlockNumber> impatient = RpcContext.call(RpcPriority.INTERACTIVE,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100),
+                () -> service.sendAsync(request(), EthBlockNumber.class));
+
+        // The window is 10 seconds, so the batch has not been sent yet
+        assertThatThrownBy(() -> impatient.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(RpcDeadlineExceededException.class);
+    }
+
+    private static BatchResponse answerAll(BatchRequest batch) {
+        List<Response<?>> responses = new ArrayList<>();
+        for (Request<?, ?> request : batch.getRequests()) {
+            responses.add(blockNumber(request.getId()));
+        }
+        return new BatchResponse(batch.getRequests(), responses);
+    }
+
+    private Request<?, EthBlockNumber> request() {
+        return new Request<>("eth_blockNumber", List.of(), service, EthBlockNumber.class);
+    }
+
+    private static EthBlockNumber blockNumber(long id) {
+        EthBlockNumber response = new EthBlockNumber();
+        response.setId(id);
+        response.setResult("0x" + Long.toHexString(id));
+        return response;
+    }
+}
@@ -0,0 +1,50 @@
+package com.wetech.demo.web3j.rpc;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency measurement for the {@code benchmark}-tagged tests, which are excluded from the regular
+ * test run ({@code gradle benchmark} runs them).
+ */
+public final class Benchmarks {
+
+    public static final String TAG = "benchmark";
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Run {@code operation} {@code warmUp} times unmeasured, then {@code runs} times.
+     * @return the latency of each measured run in nanoseconds, sorted
+     */
+    public static long[] measure(int warmUp, int runs, Callable<?> operation) throws Exception {
+        for (int i = 0; i < warmUp; i++) {
+            operation.call();
+        }
+        long[] nanos = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            operation.call();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    public static long percentile(long[] sortedNanos, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, Math.min(sortedNanos.length - 1, index))];
+    }
+
+    public static String summary(String name, long[] sortedNanos) {
+        return String.format("%-24s p50=%8.1fus p90=%8.1fus p99=%8.1fus (%d runs)", name,
+                micros(percentile(sortedNanos, 0.5)), micros(percentile(sortedNanos, 0.9)),
+                micros(percentile(sortedNanos, 0.99)), sortedNanos.length);
+    }
+
+    private static double micros(long nanos) {
+        return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,130 @@
+package com.wetech.demo.web3j.rpc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Streamed {@code eth_getLogs} of {@link #LOGS} Transfer logs from a gzip-capable node, with and
+ * without {@link CompressionInterceptor}, over loopback and over a link throttled to
+ * {@link #LINK_BYTES_PER_SECOND}. The uncompressed client asks for {@code identity}, since OkHttp
+ * would otherwise negotiate gzip on its own.
+ */
+@Tag(Benchmarks.TAG)
+class CompressionBenchmark {
+
+    private static final int LOGS = 2_000;
+    private static final long LINK_BYTES_PER_SECOND = 5_000_000;
+    private static final String CONTRACT = "0x1111111111111111111111111111111111111111";
+    private static final String TRANSFER_TOPIC = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+
+    @Test
+    void compareLogResponses() throws Exception {
+        String logs = transferLogs(new Random(1));
+        try (NodeStandIn node = new NodeStandIn(request -> logs)) {
+            node.gzip(true);
+            AtomicLong plainWire = new AtomicLong();
+            AtomicLong gzipWire = new AtomicLong();
+            OkHttpClient plainClient = new OkHttpClient.Builder()
+                    .addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                            .header("Accept-Encoding", "identity").build()))
+                    .addNetworkInterceptor(chain -> countWireBytes(chain, plainWire))
+                    .build();
+            OkHttpClient gzipClient = new OkHttpClient.Builder()
+                    .addInterceptor(new CompressionInterceptor(0, new SimpleMeterRegistry()))
+                    .addNetworkInterceptor(chain -> countWireBytes(chain, gzipWire))
+                    .build();
+            RoutingWeb3jService plain = router(node, plainClient);
+            RoutingWeb3jService gzip = router(node, gzipClient);
+            try {
+                LogStreamReader plainReader = reader(plain);
+                LogStreamReader gzipReader = reader(gzip);
+
+                compare("loopback", 20, 200, plainReader, gzipReader, plainWire, gzipWire);
+                node.throttle(LINK_BYTES_PER_SECOND);
+                compare("5MB/s link", 2, 20, plainReader, gzipReader, plainWire, gzipWire);
+            } finally {
+                plain.close();
+                gzip.close();
+            }
+        }
+    }
+
+    private static void compare(String link, int warmUp, int runs, LogStreamReader plainReader,
+                                LogStreamReader gzipReader, AtomicLong plainWire, AtomicLong gzipWire)
+            throws Exception {
+        long[] plainNanos = Benchmarks.measure(warmUp, runs, () -> read(plainReader));
+        long[] gzipNanos = Benchmarks.measure(warmUp, runs, () -> read(gzipReader));
+        long plainBytes = plainWire.getAndSet(0) / (warmUp + runs);
+        long gzipBytes = gzipWire.getAndSet(0) / (warmUp + runs);
+
+        System.out.println(Benchmarks.summary(link + " identity", plainNanos) + " " + plainBytes + " bytes/call");
+        System.out.println(Benchmarks.summary(link + " gzip", gzipNanos) + " " + gzipBytes + " bytes/call");
+        assertThat(gzipBytes).isLessThan(plainBytes);
+    }
+
+    private static long read(LogStreamReader reader) throws Exception {
+        long count = reader.stream(new EthFilter(DefaultBlockParameter.valueOf(BigInteger.ONE),
+                DefaultBlockParameter.valueOf(BigInteger.TEN), CONTRACT), log -> {
+        });
+        assertThat(count).isEqualTo(LOGS);
+        return count;
+    }
+
+    private static Response countWireBytes(Interceptor.Chain chain, AtomicLong wire) throws IOException {
+        Response response = chain.proceed(chain.request());
+        wire.addAndGet(Math.max(0, response.body().contentLength()));
+        return response;
+    }
+
+    private static RoutingWeb3jService router(NodeStandIn node, OkHttpClient client) {
+        return new RoutingWeb3jService(List.of(new RpcEndpoint("node", new PooledHttpService(node.httpUrl(), client),
+                new AdaptiveConcurrencyLimiter("node", 20, 2, 200, Duration.ofMillis(250)))), 3,
+                Duration.ofSeconds(30), Duration.ofSeconds(5), null);
+    }
+
+    private static LogStreamReader reader(RoutingWeb3jService router) {
+        return new LogStreamReader(router, new PriorityScheduler(8, Map.of(), Duration.ofSeconds(1)));
+    }
+
+    /**
+     * Transfer logs with random hashes, parties and amounts, so they compress like real ones rather
+     * than like repeated text.
+     */
+    private static String transferLogs(Random random) {
+        StringJoiner logs = new StringJoiner(",", "[", "]");
+        for (int i = 0; i < LOGS; i++) {
+            int block = 1_000_000 + i / 20;
+            logs.add("{\"address\":\"" + CONTRACT + "\",\"blockNumber\":\"0x" + Integer.toHexString(block)
+                    + "\",\"blockHash\":\"0x" + hex(random, 32) + "\",\"transactionHash\":\"0x" + hex(random, 32)
+                    + "\",\"transactionIndex\":\"0x" + Integer.toHexString(i % 20) + "\",\"logIndex\":\"0x"
+                    + Integer.toHexString(i) + "\",\"topics\":[\"" + TRANSFER_TOPIC
+                    + "\",\"0x" + "00".repeat(12) + hex(random, 20) + "\",\"0x" + "00".repeat(12) + hex(random, 20)
+                    + "\"],\"data\":\"0x" + "00".repeat(24) + hex(random, 8) + "\",\"removed\":false}");
+        }
+        return logs.toString();
+    }
+
+    private static String hex(Random random, int bytes) {
+        byte[] value = new byte[bytes];
+        random.nextBytes(value);
+        return Numeric.toHexStringNoPrefix(value);
+    }
+}
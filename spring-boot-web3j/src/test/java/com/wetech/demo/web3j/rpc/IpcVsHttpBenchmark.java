@@ -0,0 +1,50 @@
+package com.wetech.demo.web3j.rpc;
+
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Sequential {@code eth_blockNumber} latency of the IPC and HTTP transports against the same
+ * in-process node, i.e. the transport overhead alone.
+ */
+@Tag(Benchmarks.TAG)
+class IpcVsHttpBenchmark {
+
+    private static final int WARM_UP = 1_000;
+    private static final int RUNS = 10_000;
+
+    @Test
+    void compareLatency() throws Exception {
+        try (NodeStandIn node = new NodeStandIn(request -> "\"0x10\"")) {
+            PooledHttpService http = new PooledHttpService(node.httpUrl(), new OkHttpClient());
+            UnixSocketIpcService ipc = new UnixSocketIpcService(node.ipcPath(), 4);
+            try {
+                long[] httpNanos = Benchmarks.measure(WARM_UP, RUNS, () -> blockNumber(http));
+                long[] ipcNanos = Benchmarks.measure(WARM_UP, RUNS, () -> blockNumber(ipc));
+
+                System.out.println(Benchmarks.summary("http eth_blockNumber", httpNanos));
+                System.out.println(Benchmarks.summary("ipc eth_blockNumber", ipcNanos));
+                assertThat(httpNanos).hasSize(RUNS);
+                assertThat(ipcNanos).hasSize(RUNS);
+            } finally {
+                http.close();
+                ipc.close();
+            }
+        }
+    }
+
+    private static EthBlockNumber blockNumber(Web3jService transport) throws Exception {
+        EthBlockNumber response = transport.send(
+                new Request<>("eth_blockNumber", List.of(), transport, EthBlockNumber.class), EthBlockNumber.class);
+        assertThat(response.hasError()).isFalse();
+        return response;
+    }
+}
@@ -0,0 +1,96 @@
+package com.wetech.demo.web3j.rpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LogStreamReaderTest {
+
+    private static final String CONTRACT = "0x1111111111111111111111111111111111111111";
+
+    private NodeStandIn node;
+    private RoutingWeb3jService router;
+
+    @AfterEach
+    void stop() throws IOException {
+        router.close();
+        node.close();
+    }
+
+    @Test
+    void handsEveryLogToTheConsumerInOrder() throws IOException {
+        LogStreamReader reader = start(request -> logs(5_000));
+        List<BigInteger> indexes = new ArrayList<>();
+
+        long count = reader.stream(filter(), log -> indexes.add(log.getLogIndex()));
+
+        assertThat(count).isEqualTo(5_000);
+        assertThat(indexes).hasSize(5_000);
+        assertThat(indexes.get(0)).isEqualTo(BigInteger.ZERO);
+        assertThat(indexes.get(4_999)).isEqualTo(BigInteger.valueOf(4_999));
+    }
+
+    @Test
+    void decodesTheFieldsOfEachLog() throws IOException {
+        LogStreamReader reader = start(request -> logs(1));
+        List<Log> received = new ArrayList<>();
+
+        reader.stream(filter(), received::add);
+
+        Log log = received.get(0);
+        assertThat(log.getAddress()).isEqualTo(CONTRACT);
+        assertThat(log.getBlockNumber()).isEqualTo(BigInteger.valueOf(100));
+        assertThat(log.getTopics()).containsExactly("0x" + "ab".repeat(32));
+        assertThat(log.getData()).isEqualTo("0x" + "00".repeat(31) + "2a");
+    }
+
+    @Test
+    void reportsJsonRpcErrors() throws IOException {
+        LogStreamReader reader = start(request -> {
+            throw new NodeStandIn.RpcError(-32005, "query returned more than 10000 results");
+        });
+
+        assertThatThrownBy(() -> reader.stream(filter(), log -> {
+        })).isInstanceOf(IOException.class).hasMessageContaining("query returned more than 10000 results");
+    }
+
+    private LogStreamReader start(Function<JsonNode, String> results) throws IOException {
+        node = new NodeStandIn(results);
+        router = new RoutingWeb3jService(List.of(new RpcEndpoint("node",
+                new PooledHttpService(node.httpUrl(), new OkHttpClient()),
+                new AdaptiveConcurrencyLimiter("node", 20, 2, 200, Duration.ofMillis(250)))), 3,
+                Duration.ofSeconds(30), Duration.ofSeconds(5), null);
+        return new LogStreamReader(router, new PriorityScheduler(8, Map.of(), Duration.ofSeconds(1)));
+    }
+
+    private static EthFilter filter() {
+        return new EthFilter(DefaultBlockParameter.valueOf(BigInteger.valueOf(100)),
+                DefaultBlockParameter.valueOf(BigInteger.valueOf(200)), CONTRACT);
+    }
+
+    private static String logs(int count) {
+        StringJoiner logs = new StringJoiner(",", "[", "]");
+        for (int i = 0; i < count; i++) {
+            logs.add("{\"address\":\"" + CONTRACT + "\",\"blockNumber\":\"0x64\",\"logIndex\":\"0x"
+                    + Integer.toHexString(i) + "\",\"topics\":[\"0x" + "ab".repeat(32) + "\"],\"data\":\"0x"
+                    + "00".repeat(31) + "2a\",\"removed\":false}");
+        }
+        return logs.toString();
+    }
+}
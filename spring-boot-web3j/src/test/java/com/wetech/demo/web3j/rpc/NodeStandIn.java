@@ -0,0 +1,248 @@
+package com.wetech.demo.web3j.rpc;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
+
+import javax.net.ServerSocketFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * In-process JSON-RPC node stand-in that answers the same way over HTTP and over a Unix domain
+ * socket, so transports can be tested and compared against one "node".
+ */
+public class NodeStandIn implements Closeable {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final Function<JsonNode, String> results;
+    private volatile boolean gzip;
+    private volatile long bytesPerSecond;
+    private final MockWebServer http = new MockWebServer();
+    private final Path ipcDirectory;
+    private final Path ipcPath;
+    private final ServerSocketChannel ipcServer;
+    private final ExecutorService ipcThreads = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "node-stand-in-ipc");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param results raw JSON result for a JSON-RPC request object; throwing {@link RpcError}
+     *                answers with a JSON-RPC error instead
+     */
+    public NodeStandIn(Function<JsonNode, String> results) throws IOException {
+        this.results = results;
+        http.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                try {
+                    return respond(request, answer(JSON.readTree(requestBody(request))));
+                } catch (IOException e) {
+                    return new MockResponse().setResponseCode(400);
+                }
+            }
+        });
+        // Like a real node (Go sets TCP_NODELAY by default), so small responses are not held back by Nagle
+        http.setServerSocketFactory(new NoDelayServerSocketFactory());
+        http.start();
+        ipcDirectory = Files.createTempDirectory("node");
+        ipcPath = ipcDirectory.resolve("node.ipc");
+        ipcServer = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        ipcServer.bind(UnixDomainSocketAddress.of(ipcPath));
+        ipcThreads.execute(this::acceptIpc);
+    }
+
+    public String httpUrl() {
+        return http.url("/").toString();
+    }
+
+    public MockWebServer http() {
+        return http;
+    }
+
+    /**
+     * Gzip HTTP responses to clients that accept it, as nodes behind a compressing proxy do.
+     * Gzipped request bodies are always accepted.
+     */
+    public void gzip(boolean enabled) {
+        this.gzip = enabled;
+    }
+
+    /**
+     * Send HTTP response bodies at {@code bytesPerSecond}, like a remote node over a slower link;
+     * 0 sends them as fast as loopback allows.
+     */
+    public void throttle(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public String ipcPath() {
+        return ipcPath.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        ipcServer.close();
+        ipcThreads.shutdownNow();
+        Files.deleteIfExists(ipcPath);
+        Files.deleteIfExists(ipcDirectory);
+        http.shutdown();
+    }
+
+    private static String requestBody(RecordedRequest request) throws IOException {
+        if ("gzip".equalsIgnoreCase(request.getHeader("Content-Encoding"))) {
+            try (BufferedSource decoded = Okio.buffer(new GzipSource(request.getBody()))) {
+                return decoded.readUtf8();
+            }
+        }
+        return request.getBody().readUtf8();
+    }
+
+    private MockResponse respond(RecordedRequest request, String body) throws IOException {
+        MockResponse response = new MockResponse();
+        String accepted = request.getHeader("Accept-Encoding");
+        if (gzip && accepted != null && accepted.contains("gzip")) {
+            Buffer compressed = new Buffer();
+            try (BufferedSink sink = Okio.buffer(new GzipSink(compressed))) {
+                sink.writeUtf8(body);
+            }
+            response.setHeader("Content-Encoding", "gzip").setBody(compressed);
+        } else {
+            response.setBody(body);
+        }
+        long rate = bytesPerSecond;
+        if (rate > 0) {
+            // In 10ms slices
+            response.throttleBody(Math.max(1, rate / 100), 10, TimeUnit.MILLISECONDS);
+        }
+        return response;
+    }
+
+    private String answer(JsonNode request) {
+        if (request.isArray()) {
+            List<String> responses = new ArrayList<>();
+            request.forEach(single -> responses.add(answer(single)));
+            return "[" + String.join(",", responses) + "]";
+        }
+        String member;
+        try {
+            member = "\"result\":" + results.apply(request);
+        } catch (RpcError error) {
+            member = "\"error\":{\"code\":" + error.code + ",\"message\":\"" + error.getMessage() + "\"}";
+        }
+        return "{\"jsonrpc\":\"2.0\",\"id\":" + request.get("id") + "," + member + "}";
+    }
+
+    /**
+     * A JSON-RPC error for the stand-in to answer with.
+     */
+    public static class RpcError extends RuntimeException {
+
+        private final int code;
+
+        public RpcError(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    private static final class NoDelayServerSocketFactory extends ServerSocketFactory {
+
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new ServerSocket() {
+                @Override
+                public Socket accept() throws IOException {
+                    Socket socket = new Socket();
+                    implAccept(socket);
+                    socket.setTcpNoDelay(true);
+                    return socket;
+                }
+            };
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress address) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private void acceptIpc() {
+        while (ipcServer.isOpen()) {
+            try {
+                SocketChannel connection = ipcServer.accept();
+                ipcThreads.execute(() -> serveIpc(connection));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Like geth: one JSON value per request, answered with one JSON value and a newline.
+     */
+    private void serveIpc(SocketChannel connection) {
+        try (connection) {
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+            while (connection.read(buffer) >= 0) {
+                received.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+                JsonNode request;
+                try {
+                    request = JSON.readTree(received.toByteArray());
+                } catch (JsonProcessingException incomplete) {
+                    continue;
+                }
+                received.reset();
+                ByteBuffer response = ByteBuffer.wrap((answer(request) + "\n").getBytes(StandardCharsets.UTF_8));
+                while (response.hasRemaining()) {
+                    connection.write(response);
+                }
+            }
+        } catch (IOException e) {
+            // Connection closed by the client
+        }
+    }
+}
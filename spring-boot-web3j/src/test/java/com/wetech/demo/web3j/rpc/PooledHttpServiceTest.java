@@ -0,0 +1,82 @@
+package com.wetech.demo.web3j.rpc;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PooledHttpServiceTest {
+
+    private final MockWebServer node = new MockWebServer();
+    private PooledHttpService service;
+
+    @BeforeEach
+    void start() throws IOException {
+        node.start();
+        service = new PooledHttpService(node.url("/").toString(), new OkHttpClient());
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        service.close();
+        node.shutdown();
+    }
+
+    @Test
+    void executesOnTheCallingThread() throws IOException {
+        node.enqueue(new MockResponse().setBody("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"0x2a\"}"));
+
+        EthBlockNumber response = service.send(blockNumber(), EthBlockNumber.class);
+
+        assertThat(response.getBlockNumber()).hasToString("42");
+        assertThat(service.getHttpClient().dispatcher().queuedCallsCount()).isZero();
+    }
+
+    @Test
+    void reportsHttpErrorsWithTheirStatus() {
+        node.enqueue(new MockResponse().setResponseCode(502).setBody("Bad Gateway"));
+
+        assertThatThrownBy(() -> service.send(blockNumber(), EthBlockNumber.class))
+                .isInstanceOfSatisfying(RpcHttpStatusException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(502));
+    }
+
+    @Test
+    void interruptCancelsTheExchange() throws Exception {
+        node.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        CompletableFuture<Throwable> failure = new CompletableFuture<>();
+        Thread caller = new Thread(() -> {
+            try {
+                service.send(blockNumber(), EthBlockNumber.class);
+                failure.complete(null);
+            } catch (Throwable e) {
+                failure.complete(e);
+            }
+        });
+        caller.start();
+        node.takeRequest(5, TimeUnit.SECONDS);
+
+        caller.interrupt();
+
+        assertThat(failure.get(5, TimeUnit.SECONDS)).isInstanceOf(InterruptedIOException.class);
+        assertThat(service.getHttpClient().dispatcher().runningCallsCount()).isZero();
+    }
+
+    private Request<?, EthBlockNumber> blockNumber() {
+        return new Request<>("eth_blockNumber", List.of(), service, EthBlockNumber.class);
+    }
+}
@@ -0,0 +1,68 @@
+package com.wetech.demo.web3j.rpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PrioritySchedulerTest {
+
+    private final PriorityScheduler scheduler = new PriorityScheduler(1, Map.of(), Duration.ofMinutes(1));
+
+    @Test
+    void queuedCallerGivesUpAtItsDeadline() throws Exception {
+        scheduler.acquire(RpcPriority.INTERACTIVE, null);
+        long start = System.nanoTime();
+
+        assertThatThrownBy(() -> scheduler.acquire(RpcPriority.INTERACTIVE,
+                start + TimeUnit.MILLISECONDS.toNanos(100)))
+                .isInstanceOf(RpcDeadlineExceededException.class);
+
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(scheduler.getQueued(RpcPriority.INTERACTIVE)).isZero();
+        assertThat(scheduler.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    void expiredCallerDoesNotTakeTheNextFreeSlot() throws Exception {
+        scheduler.acquire(RpcPriority.INTERACTIVE, null);
+        assertThatThrownBy(() -> scheduler.acquire(RpcPriority.BACKGROUND,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50)))
+                .isInstanceOf(RpcDeadlineExceededException.class);
+        CompletableFuture<Void> patient = CompletableFuture.runAsync(() -> {
+            try {
+                scheduler.acquire(RpcPriority.BACKGROUND, System.nanoTime() + TimeUnit.SECONDS.toNanos(5));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        scheduler.release();
+
+        patient.get(5, TimeUnit.SECONDS);
+        assertThat(scheduler.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    void callerWithoutDeadlineWaitsForASlot() throws Exception {
+        scheduler.acquire(RpcPriority.INTERACTIVE, null);
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> {
+            try {
+                scheduler.acquire(RpcPriority.INTERACTIVE, null);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        Thread.sleep(100);
+        assertThat(waiting).isNotDone();
+        scheduler.release();
+
+        waiting.get(5, TimeUnit.SECONDS);
+    }
+}
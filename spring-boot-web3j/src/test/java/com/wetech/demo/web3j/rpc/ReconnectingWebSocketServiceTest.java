@@ -0,0 +1,165 @@
+package com.wetech.demo.web3j.rpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.reactivex.disposables.Disposable;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.core.methods.response.EthSubscribe;
+import org.web3j.protocol.websocket.events.NewHeadsNotification;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Runs the transport against an in-process WebSocket JSON-RPC stand-in that answers
+ * {@code eth_blockNumber}, accepts {@code newHeads} subscriptions and can drop the connection.
+ */
+class ReconnectingWebSocketServiceTest {
+
+    private final MockWebServer node = new MockWebServer();
+    private final StandIn standIn = new StandIn();
+    private ReconnectingWebSocketService service;
+
+    @BeforeEach
+    void start() throws IOException {
+        node.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return standIn.down ? new MockResponse().setResponseCode(503)
+                        : new MockResponse().withWebSocketUpgrade(standIn);
+            }
+        });
+        node.start();
+        service = new ReconnectingWebSocketService("ws://" + node.getHostName() + ":" + node.getPort(),
+                Duration.ofMillis(50), Duration.ofMillis(200));
+        service.connect();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        service.close();
+        node.shutdown();
+    }
+
+    @Test
+    void answersRequestsOverTheSocket() throws IOException {
+        EthBlockNumber response = service.send(blockNumber(), EthBlockNumber.class);
+
+        assertThat(response.getBlockNumber()).isEqualTo(BigInteger.valueOf(16));
+    }
+
+    @Test
+    void failsFastWhileDisconnectedAndReconnects() throws IOException {
+        service.send(blockNumber(), EthBlockNumber.class);
+        standIn.down = true;
+        standIn.drop();
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> !service.isConnected());
+        assertThatThrownBy(() -> service.send(blockNumber(), EthBlockNumber.class))
+                .isInstanceOf(ConnectException.class);
+
+        standIn.down = false;
+        await().atMost(5, TimeUnit.SECONDS).until(service::isConnected);
+        assertThat(service.send(blockNumber(), EthBlockNumber.class).getBlockNumber())
+                .isEqualTo(BigInteger.valueOf(16));
+        assertThat(standIn.connections.get()).isEqualTo(2);
+    }
+
+    @Test
+    void subscriptionsSurviveAReconnect() {
+        BlockingQueue<BigInteger> heads = new LinkedBlockingQueue<>();
+        Disposable subscription = service.subscribe(
+                        new Request<>("eth_subscribe", List.of("newHeads"), service, EthSubscribe.class),
+                        "eth_unsubscribe", NewHeadsNotification.class)
+                .subscribe(notification -> heads.add(
+                        new BigInteger(notification.getParams().getResult().getNumber().substring(2), 16)));
+        try {
+            await().atMost(5, TimeUnit.SECONDS).until(() -> standIn.subscribed.get() == 1);
+            standIn.pushHead(17);
+            await().atMost(5, TimeUnit.SECONDS).until(() -> heads.contains(BigInteger.valueOf(17)));
+
+            standIn.drop();
+
+            await().atMost(5, TimeUnit.SECONDS).until(() -> standIn.subscribed.get() == 2);
+            standIn.pushHead(18);
+            await().atMost(5, TimeUnit.SECONDS).until(() -> heads.contains(BigInteger.valueOf(18)));
+        } finally {
+            subscription.dispose();
+        }
+    }
+
+    private Request<?, EthBlockNumber> blockNumber() {
+        return new Request<>("eth_blockNumber", List.of(), service, EthBlockNumber.class);
+    }
+
+    private static final class StandIn extends WebSocketListener {
+
+        private static final ObjectMapper JSON = new ObjectMapper();
+
+        final AtomicInteger connections = new AtomicInteger();
+        final AtomicInteger subscribed = new AtomicInteger();
+        private final AtomicReference<WebSocket> socket = new AtomicReference<>();
+        volatile boolean down;
+
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            connections.incrementAndGet();
+            socket.set(webSocket);
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            try {
+                JsonNode request = JSON.readTree(text);
+                String result = switch (request.get("method").asText()) {
+                    case "eth_blockNumber" -> "\"0x10\"";
+                    case "eth_subscribe" -> "\"0xfeed\"";
+                    default -> "true";
+                };
+                webSocket.send("{\"jsonrpc\":\"2.0\",\"id\":" + request.get("id") + ",\"result\":" + result + "}");
+                if ("eth_subscribe".equals(request.get("method").asText())) {
+                    subscribed.incrementAndGet();
+                }
+            } catch (IOException e) {
+                webSocket.close(1011, e.getMessage());
+            }
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            webSocket.close(code, null);
+        }
+
+        void pushHead(long number) {
+            socket.get().send("{\"jsonrpc\":\"2.0\",\"method\":\"eth_subscription\",\"params\":"
+                    + "{\"subscription\":\"0xfeed\",\"result\":{\"number\":\"0x" + Long.toHexString(number) + "\"}}}");
+        }
+
+        void drop() {
+            socket.get().close(1001, "going away");
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.wetech.demo.web3j.rpc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RetryingWeb3jServiceTest {
+
+    private static final String BLOCK_NUMBER = "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"0x2a\"}";
+
+    private final MockWebServer node = new MockWebServer();
+    private PooledHttpService transport;
+    private RetryingWeb3jService service;
+
+    @BeforeEach
+    void start() throws IOException {
+        node.start();
+        transport = new PooledHttpService(node.url("/").toString(), new OkHttpClient());
+        service = new RetryingWeb3jService(transport, Set.of("eth_blockNumber"), 3,
+                Duration.ofMillis(1), Duration.ofMillis(5), 10, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        service.close();
+        node.shutdown();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {429, 502, 503, 504})
+    void retriesOverloadAndGatewayStatuses(int status) throws IOException {
+        node.enqueue(new MockResponse().setResponseCode(status));
+        node.enqueue(new MockResponse().setBody(BLOCK_NUMBER));
+
+        EthBlockNumber response = service.send(blockNumber(), EthBlockNumber.class);
+
+        assertThat(response.getBlockNumber()).hasToString("42");
+        assertThat(node.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    void doesNotRetryOtherStatuses() {
+        node.enqueue(new MockResponse().setResponseCode(500));
+        node.enqueue(new MockResponse().setBody(BLOCK_NUMBER));
+
+        assertThatThrownBy(() -> service.send(blockNumber(), EthBlockNumber.class))
+                .isInstanceOfSatisfying(RpcHttpStatusException.class,
+                        e -> assertThat(e.getStatus()).isEqualTo(500));
+        assertThat(node.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    void givesUpAfterTheLastAttempt() {
+        for (int i = 0; i < 3; i++) {
+            node.enqueue(new MockResponse().setResponseCode(503));
+        }
+
+        assertThatThrownBy(() -> service.send(blockNumber(), EthBlockNumber.class))
+                .isInstanceOf(RpcHttpStatusException.class);
+        assertThat(node.getRequestCount()).isEqualTo(3);
+    }
+
+    private Request<?, EthBlockNumber> blockNumber() {
+        return new Request<>("eth_blockNumber", List.of(), transport, EthBlockNumber.class);
+    }
+}
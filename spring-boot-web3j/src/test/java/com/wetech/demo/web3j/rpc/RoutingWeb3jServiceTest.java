@@ -0,0 +1,250 @@
+package com.wetech.demo.web3j.rpc;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.core.methods.response.EthFilter;
+import org.web3j.protocol.core.methods.response.EthGetTransactionCount;
+import org.web3j.protocol.core.methods.response.EthLog;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RoutingWeb3jServiceTest {
+
+    private static final String SENDER = "0xaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa";
+    private static final String OTHER_SENDER = "0xbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbb";
+
+    private final Web3jService firstTransport = mock(Web3jService.class);
+    private final Web3jService secondTransport = mock(Web3jService.class);
+    private final RpcEndpoint first = endpoint("first", firstTransport);
+    private final RpcEndpoint second = endpoint("second", secondTransport);
+    private final RoutingWeb3jService routing = new RoutingWeb3jService(List.of(first, second), 3,
+            Duration.ofSeconds(30), Duration.ofSeconds(5), null);
+
+    @BeforeEach
+    void answer() throws IOException {
+        for (Web3jService transport : List.of(firstTransport, secondTransport)) {
+            when(transport.send(any(Request.class), eq(EthGetTransactionCount.class)))
+                    .thenAnswer(invocation -> transactionCount(invocation.getArgument(0)));
+            when(transport.sendBatch(any())).thenAnswer(invocation -> new BatchResponse(
+                    ((BatchRequest) invocation.getArgument(0)).getRequests(), List.of()));
+        }
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        routing.close();
+    }
+
+    @Test
+    void writesOfOneSenderStayOnTheirEndpointWhenAnotherScoresBetter() throws IOException {
+        routing.send(nonceRequest(SENDER), EthGetTransactionCount.class);
+        verify(firstTransport).send(any(Request.class), eq(EthGetTransactionCount.class));
+
+        first.recordSuccess(TimeUnit.MILLISECONDS.toNanos(500));
+        second.recordSuccess(TimeUnit.MILLISECONDS.toNanos(1));
+        routing.send(nonceRequest(OTHER_SENDER), EthGetTransactionCount.class);
+        for (int i = 0; i < 10; i++) {
+            routing.send(nonceRequest(SENDER), EthGetTransactionCount.class);
+        }
+
+        verify(firstTransport, times(11)).send(any(Request.class), eq(EthGetTransactionCount.class));
+        verify(secondTransport, times(1)).send(any(Request.class), eq(EthGetTransactionCount.class));
+    }
+
+    @Test
+    void batchWithAWriteFollowsTheEndpointOfItsSender() throws IOException {
+        routing.send(nonceRequest(SENDER), EthGetTransactionCount.class);
+        first.recordSuccess(TimeUnit.MILLISECONDS.toNanos(500));
+        second.recordSuccess(TimeUnit.MILLISECONDS.toNanos(1));
+
+        BatchRequest batch = new BatchRequest(routing);
+        batch.add(new Request<>("eth_blockNumber", List.of(), routing, EthBlockNumber.class));
+        batch.add(nonceRequest(SENDER));
+        routing.sendBatch(batch);
+
+        verify(firstTransport).sendBatch(batch);
+        verify(secondTransport, never()).sendBatch(any());
+    }
+
+    @Test
+    void writesMoveOnceTheirEndpointIsEjected() throws IOException {
+        routing.send(nonceRequest(SENDER), EthGetTransactionCount.class);
+        first.eject(TimeUnit.SECONDS.toNanos(30));
+
+        routing.send(nonceRequest(SENDER), EthGetTransactionCount.class);
+        routing.send(nonceRequest(SENDER), EthGetTransactionCount.class);
+
+        verify(firstTransport, times(1)).send(any(Request.class), eq(EthGetTransactionCount.class));
+        verify(secondTransport, times(2)).send(any(Request.class), eq(EthGetTransactionCount.class));
+    }
+
+    @Test
+    void readsFailOverWhenTheNodeAnswersWithAServerError() throws IOException {
+        when(firstTransport.send(any(Request.class), eq(EthBlockNumber.class)))
+                .thenThrow(new RpcHttpStatusException(502, "Invalid response received: 502; Bad Gateway"));
+        when(secondTransport.send(any(Request.class), eq(EthBlockNumber.class)))
+                .thenAnswer(invocation -> blockNumber(invocation.getArgument(0)));
+        // Make the failing endpoint the preferred one
+        first.recordSuccess(TimeUnit.MILLISECONDS.toNanos(1));
+        second.recordSuccess(TimeUnit.MILLISECONDS.toNanos(500));
+
+        EthBlockNumber response = routing.send(blockNumberRequest(), EthBlockNumber.class);
+
+        assertThat(response.getBlockNumber()).hasToString("1");
+        assertThat(first.getFailures()).isEqualTo(1);
+    }
+
+    @Test
+    void nodeAnsweringWithServerErrorsIsEjected() throws IOException {
+        RoutingWeb3jService single = new RoutingWeb3jService(List.of(first), 3,
+                Duration.ofSeconds(30), Duration.ofSeconds(5), null);
+        when(firstTransport.send(any(Request.class), eq(EthBlockNumber.class)))
+                .thenThrow(new RpcHttpStatusException(500, "Invalid response received: 500; Internal Server Error"));
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> single.send(blockNumberRequest(), EthBlockNumber.class))
+                    .isInstanceOf(RpcHttpStatusException.class);
+        }
+
+        assertThat(first.isAvailable()).isFalse();
+        single.close();
+    }
+
+    @Test
+    void filterPollsGoToTheEndpointThatCreatedTheFilter() throws IOException {
+        // web3j re-encodes the id as a number, dropping the leading zero
+        when(firstTransport.send(any(Request.class), eq(EthFilter.class)))
+                .thenAnswer(invocation -> filter(invocation.getArgument(0), "0x0a"));
+        when(secondTransport.send(any(Request.class), eq(EthFilter.class)))
+                .thenAnswer(invocation -> filter(invocation.getArgument(0), "0x0a"));
+        for (Web3jService transport : List.of(firstTransport, secondTransport)) {
+            when(transport.send(any(Request.class), eq(EthLog.class))).thenAnswer(invocation -> {
+                EthLog response = new EthLog();
+                response.setId(((Request<?, ?>) invocation.getArgument(0)).getId());
+                return response;
+            });
+        }
+        first.recordSuccess(TimeUnit.MILLISECONDS.toNanos(1));
+        second.recordSuccess(TimeUnit.MILLISECONDS.toNanos(500));
+
+        routing.send(new Request<>("eth_newBlockFilter", List.of(), routing, EthFilter.class), EthFilter.class);
+        verify(firstTransport).send(any(Request.class), eq(EthFilter.class));
+
+        // The creating endpoint now scores worse, but polls stay on it
+        first.recordSuccess(TimeUnit.SECONDS.toNanos(5));
+        for (int i = 0; i < 5; i++) {
+            routing.send(new Request<>("eth_getFilterChanges", List.of("0xa"), routing, EthLog.class), EthLog.class);
+        }
+
+        verify(firstTransport, times(5)).send(any(Request.class), eq(EthLog.class));
+        verify(secondTransport, never()).send(any(Request.class), eq(EthLog.class));
+    }
+
+    @Test
+    void tooManyRequestsFromTheNodeCutsTheConcurrencyLimit() throws IOException {
+        try (MockWebServer node = new MockWebServer()) {
+            node.enqueue(new MockResponse().setResponseCode(429).setBody("Too Many Requests"));
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("node", 20, 2, 200,
+                    Duration.ofMillis(250));
+            RoutingWeb3jService single = new RoutingWeb3jService(List.of(new RpcEndpoint("node",
+                    new PooledHttpService(node.url("/").toString(), new OkHttpClient()), limiter)), 3,
+                    Duration.ofSeconds(30), Duration.ofSeconds(5), null);
+
+            assertThatThrownBy(() -> single.send(blockNumberRequest(), EthBlockNumber.class))
+                    .isInstanceOf(RpcHttpStatusException.class);
+
+            assertThat(limiter.getLimit()).isEqualTo(18);
+            single.close();
+        }
+    }
+
+    @Test
+    void hedgeFinishingAfterAnUncheckedPrimaryFailureLeavesTheCallerAlone() throws Exception {
+        RoutingWeb3jService hedging = new RoutingWeb3jService(List.of(first, second), 3,
+                Duration.ofSeconds(30), Duration.ofSeconds(5),
+                new HedgePolicy(Set.of("eth_blockNumber"), 0.9, Duration.ofMillis(10), 100, 1));
+        when(firstTransport.send(any(Request.class), eq(EthBlockNumber.class))).thenAnswer(invocation -> {
+            Thread.sleep(100);
+            throw new IllegalStateException("malformed response");
+        });
+        when(secondTransport.send(any(Request.class), eq(EthBlockNumber.class))).thenAnswer(invocation -> {
+            // Like a blocking read that does not notice the cancellation
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+            while (System.nanoTime() - until < 0) {
+                Thread.onSpinWait();
+            }
+            return blockNumber(invocation.getArgument(0));
+        });
+        first.recordSuccess(TimeUnit.MILLISECONDS.toNanos(1));
+        second.recordSuccess(TimeUnit.MILLISECONDS.toNanos(500));
+
+        try {
+            assertThatThrownBy(() -> hedging.send(blockNumberRequest(), EthBlockNumber.class))
+                    .isInstanceOf(IllegalStateException.class);
+            // Give the hedge time to complete
+            Thread.sleep(500);
+            assertThat(Thread.interrupted()).isFalse();
+        } finally {
+            Thread.interrupted();
+            hedging.close();
+        }
+    }
+
+    private static EthFilter filter(Request<?, ?> request, String id) {
+        EthFilter response = new EthFilter();
+        response.setId(request.getId());
+        response.setResult(id);
+        return response;
+    }
+
+    private Request<?, EthBlockNumber> blockNumberRequest() {
+        return new Request<>("eth_blockNumber", List.of(), routing, EthBlockNumber.class);
+    }
+
+    private static EthBlockNumber blockNumber(Request<?, ?> request) {
+        EthBlockNumber response = new EthBlockNumber();
+        response.setId(request.getId());
+        response.setResult("0x1");
+        return response;
+    }
+
+    private Request<?, EthGetTransactionCount> nonceRequest(String sender) {
+        return new Request<>("eth_getTransactionCount", List.of(sender, "pending"), routing,
+                EthGetTransactionCount.class);
+    }
+
+    private static EthGetTransactionCount transactionCount(Request<?, ?> request) {
+        EthGetTransactionCount response = new EthGetTransactionCount();
+        response.setId(request.getId());
+        response.setResult("0x1");
+        return response;
+    }
+
+    private static RpcEndpoint endpoint(String name, Web3jService transport) {
+        return new RpcEndpoint(name, transport,
+                new AdaptiveConcurrencyLimiter(name, 20, 2, 200, Duration.ofMillis(250)));
+    }
+}
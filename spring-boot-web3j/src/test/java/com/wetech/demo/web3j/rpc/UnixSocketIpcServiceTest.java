@@ -0,0 +1,114 @@
+package com.wetech.demo.web3j.rpc;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.core.methods.response.Web3ClientVersion;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UnixSocketIpcServiceTest {
+
+    // Braces, brackets and an escaped quote inside a string must not end the response early
+    private static final String CLIENT_VERSION = "Geth/{v1]\\\"[}";
+
+    private final CountDownLatch concurrent = new CountDownLatch(4);
+    private NodeStandIn node;
+    private UnixSocketIpcService service;
+
+    @AfterEach
+    void stop() throws IOException {
+        if (service != null) {
+            service.close();
+        }
+        node.close();
+    }
+
+    @Test
+    void answersRequests() throws IOException {
+        start();
+
+        EthBlockNumber response = service.send(blockNumber(), EthBlockNumber.class);
+
+        assertThat(response.getBlockNumber()).isEqualTo(BigInteger.valueOf(16));
+    }
+
+    @Test
+    void answersBatches() throws IOException {
+        start();
+        BatchRequest batch = new BatchRequest(service);
+        batch.add(blockNumber());
+        batch.add(new Request<>("web3_clientVersion", List.of(), service, Web3ClientVersion.class));
+
+        BatchResponse response = service.sendBatch(batch);
+
+        assertThat(response.getResponses()).hasSize(2);
+        assertThat(((EthBlockNumber) response.getResponses().get(0)).getBlockNumber()).isEqualTo(BigInteger.valueOf(16));
+        assertThat(((Web3ClientVersion) response.getResponses().get(1)).getWeb3ClientVersion())
+                .isEqualTo("Geth/{v1]\"[}");
+    }
+
+    @Test
+    void framesResponsesByJsonNestingOutsideStrings() throws IOException {
+        start();
+
+        Web3ClientVersion response = service.send(
+                new Request<>("web3_clientVersion", List.of(), service, Web3ClientVersion.class),
+                Web3ClientVersion.class);
+
+        assertThat(response.getWeb3ClientVersion()).isEqualTo("Geth/{v1]\"[}");
+        // The connection is reused for the next call
+        assertThat(service.send(blockNumber(), EthBlockNumber.class).getBlockNumber()).isEqualTo(BigInteger.valueOf(16));
+    }
+
+    @Test
+    void concurrentCallsRunOnSeparateConnections() throws Exception {
+        start();
+
+        // The node only answers once all four calls are in flight at the same time
+        List<CompletableFuture<EthBlockNumber>> calls = List.of(
+                service.sendAsync(slowBlockNumber(), EthBlockNumber.class),
+                service.sendAsync(slowBlockNumber(), EthBlockNumber.class),
+                service.sendAsync(slowBlockNumber(), EthBlockNumber.class),
+                service.sendAsync(slowBlockNumber(), EthBlockNumber.class));
+
+        for (CompletableFuture<EthBlockNumber> call : calls) {
+            assertThat(call.get(10, TimeUnit.SECONDS).getBlockNumber()).isEqualTo(BigInteger.valueOf(16));
+        }
+    }
+
+    private void start() throws IOException {
+        node = new NodeStandIn(request -> switch (request.get("method").asText()) {
+            case "web3_clientVersion" -> "\"" + CLIENT_VERSION + "\"";
+            case "test_slowBlockNumber" -> {
+                concurrent.countDown();
+                try {
+                    yield concurrent.await(2, TimeUnit.SECONDS) ? "\"0x10\"" : "\"0x0\"";
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    yield "\"0x0\"";
+                }
+            }
+            default -> "\"0x10\"";
+        });
+        service = new UnixSocketIpcService(node.ipcPath(), 4);
+    }
+
+    private Request<?, EthBlockNumber> blockNumber() {
+        return new Request<>("eth_blockNumber", List.of(), service, EthBlockNumber.class);
+    }
+
+    private Request<?, EthBlockNumber> slowBlockNumber() {
+        return new Request<>("test_slowBlockNumber", List.of(), service, EthBlockNumber.class);
+    }
+}
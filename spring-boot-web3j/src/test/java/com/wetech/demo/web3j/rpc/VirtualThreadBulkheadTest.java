@@ -0,0 +1,57 @@
+package com.wetech.demo.web3j.rpc;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class VirtualThreadBulkheadTest {
+
+    private final VirtualThreadBulkhead bulkhead = new VirtualThreadBulkhead("rpc-read", 1, 1);
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @AfterEach
+    void close() {
+        bulkhead.shutdownNow();
+    }
+
+    @Test
+    void publishesTheExecutorMetersOfAThreadPool() throws Exception {
+        bulkhead.bindTo(registry);
+        CountDownLatch release = new CountDownLatch(1);
+        bulkhead.execute(() -> hold(release));
+        bulkhead.execute(() -> hold(release));
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> gauge("executor.active") == 1);
+        assertThat(gauge("executor.queued")).isEqualTo(1);
+        assertThat(gauge("executor.pool.size")).isEqualTo(2);
+        assertThat(gauge("executor.queue.remaining")).isZero();
+        assertThat(gauge("executor.pool.max")).isEqualTo(1);
+        assertThatThrownBy(() -> bulkhead.execute(() -> { })).isInstanceOf(RejectedExecutionException.class);
+
+        release.countDown();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> registry.get("executor.completed")
+                .tag("name", "rpc.read").functionCounter().count() == 2);
+        assertThat(gauge("executor.pool.size")).isZero();
+    }
+
+    private double gauge(String name) {
+        return registry.get(name).tag("name", "rpc.read").gauge().value();
+    }
+
+    private static void hold(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
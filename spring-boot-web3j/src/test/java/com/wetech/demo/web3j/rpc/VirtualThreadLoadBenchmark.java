@@ -0,0 +1,124 @@
+package com.wetech.demo.web3j.rpc;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthGetTransactionReceipt;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Throughput of concurrent in-flight transfers on the submission executor, as a platform thread
+ * pool and as a {@link VirtualThreadBulkhead} allowing the same concurrency, against a node
+ * that takes {@link #NODE_LATENCY_MS} per call. Each transfer is the blocking RPC shape of one:
+ * {@code eth_sendRawTransaction}, then {@code eth_getTransactionReceipt}.
+ */
+@Tag(Benchmarks.TAG)
+class VirtualThreadLoadBenchmark {
+
+    private static final int[] IN_FLIGHT = {16, 64, 256, 512};
+    private static final int TRANSFERS_PER_SLOT = 4;
+    private static final long NODE_LATENCY_MS = 20;
+    private static final String RECEIPT = "{\"transactionHash\":\"0x" + "ab".repeat(32) + "\",\"status\":\"0x1\","
+            + "\"blockNumber\":\"0x10\",\"logs\":[]}";
+
+    private final ThreadMXBean threadsBean = ManagementFactory.getThreadMXBean();
+
+    @Test
+    void compareInFlightTransferScaling() throws Exception {
+        try (NodeStandIn node = new NodeStandIn(request -> {
+            sleep(NODE_LATENCY_MS);
+            return "eth_sendRawTransaction".equals(request.get("method").asText())
+                    ? "\"0x" + "ab".repeat(32) + "\"" : RECEIPT;
+        })) {
+            OkHttpClient client = new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(IN_FLIGHT[IN_FLIGHT.length - 1], 1, TimeUnit.MINUTES))
+                    .build();
+            PooledHttpService transport = new PooledHttpService(node.httpUrl(), client);
+            try {
+                for (int inFlight : IN_FLIGHT) {
+                    run("platform", inFlight, platformPool(inFlight), transport);
+                    run("virtual", inFlight, new VirtualThreadBulkhead("rpc-submission", inFlight,
+                            inFlight * TRANSFERS_PER_SLOT), transport);
+                }
+            } finally {
+                transport.close();
+            }
+        }
+    }
+
+    private void run(String mode, int inFlight, ExecutorService executor, Web3jService transport) throws Exception {
+        int transfers = inFlight * TRANSFERS_PER_SLOT;
+        try {
+            // Warm up, so connection set-up is not measured
+            transfers(executor, transport, inFlight);
+            int platformThreadsBefore = threadsBean.getThreadCount();
+            threadsBean.resetPeakThreadCount();
+            long start = System.nanoTime();
+            transfers(executor, transport, transfers);
+            long elapsed = System.nanoTime() - start;
+
+            double perSecond = transfers / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+            System.out.printf("%-8s in-flight=%4d transfers=%5d %8.0f/s peak platform threads +%d%n", mode, inFlight,
+                    transfers, perSecond, threadsBean.getPeakThreadCount() - platformThreadsBefore);
+            assertThat(perSecond).isPositive();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void transfers(ExecutorService executor, Web3jService transport, int count) throws Exception {
+        RpcCalls calls = new RpcCalls(Map.of(RpcWorkload.SUBMISSION, executor), null, null);
+        List<CompletableFuture<EthGetTransactionReceipt>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            results.add(calls.submit(RpcWorkload.SUBMISSION, RpcPriority.TRANSACTION, null, () -> transfer(transport)));
+        }
+        for (CompletableFuture<EthGetTransactionReceipt> result : results) {
+            assertThat(result.get(1, TimeUnit.MINUTES).getTransactionReceipt()).isPresent();
+        }
+    }
+
+    private static EthGetTransactionReceipt transfer(Web3jService transport) throws Exception {
+        EthSendTransaction sent = transport.send(new Request<>("eth_sendRawTransaction", List.of("0xf86b"),
+                transport, EthSendTransaction.class), EthSendTransaction.class);
+        return transport.send(new Request<>("eth_getTransactionReceipt", List.of(sent.getTransactionHash()),
+                transport, EthGetTransactionReceipt.class), EthGetTransactionReceipt.class);
+    }
+
+    /**
+     * Like {@code Web3jConfig.boundedExecutor} in platform mode, sized to admit every transfer.
+     */
+    private static ExecutorService platformPool(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * TRANSFERS_PER_SLOT), runnable -> {
+                    Thread thread = new Thread(runnable, "rpc-submission-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
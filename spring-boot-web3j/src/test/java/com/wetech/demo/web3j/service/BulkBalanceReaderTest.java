@@ -0,0 +1,61 @@
+package com.wetech.demo.web3j.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.Web3j;
+import org.web3j.utils.Numeric;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BulkBalanceReaderTest {
+
+    private static final String TOKEN = "0x1111111111111111111111111111111111111111";
+    private static final String FIRST = "0xaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa";
+    private static final String SECOND = "0xbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbb";
+    private static final String THIRD = "0xcccccccccccccccccccccccccccccccccccccccc";
+
+    private final StorageSlotReader storageSlotReader = mock(StorageSlotReader.class);
+    private final BulkBalanceReader reader = new BulkBalanceReader(mock(Web3j.class), mock(ChainHeadTracker.class),
+            storageSlotReader, new ObjectMapper(), 2, 2);
+
+    @Test
+    void invalidAddressesAreAnsweredInInputOrder() throws IOException {
+        when(storageSlotReader.balances(anyString(), anyList(), any(), any(), any())).thenAnswer(invocation -> {
+            List<String> accounts = invocation.getArgument(1);
+            // The first chunk answers last
+            long delay = accounts.contains(FIRST) ? 200 : 0;
+            return accounts.stream()
+                    .map(account -> CompletableFuture.supplyAsync(() -> Numeric.toHexStringWithPrefixZeroPadded(
+                            BigInteger.valueOf(account.charAt(2)), 64),
+                            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)))
+                    .toList();
+        });
+        String input = String.join("\n", "\"" + FIRST + "\"", "\"not-an-address\"", "\"" + SECOND + "\"",
+                "\"" + THIRD + "\"");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long written = reader.stream(TOKEN, BigInteger.TEN,
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out);
+
+        assertThat(written).isEqualTo(4);
+        assertThat(out.toString(StandardCharsets.UTF_8).lines().toList()).containsExactly(
+                "{\"address\":\"" + FIRST + "\",\"balance\":\"97\"}",
+                "{\"address\":\"not-an-address\",\"error\":\"Invalid address\"}",
+                "{\"address\":\"" + SECOND + "\",\"balance\":\"98\"}",
+                "{\"address\":\"" + THIRD + "\",\"balance\":\"99\"}");
+    }
+}
@@ -0,0 +1,90 @@
+package com.wetech.demo.web3j.service;
+
+import org.junit.jupiter.api.Test;
+import org.web3j.utils.Numeric;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class Multicall3CodecTest {
+
+    private static final String TARGET_A = "0x1111111111111111111111111111111111111111";
+    private static final String TARGET_B = "0x2222222222222222222222222222222222222222";
+
+    @Test
+    void selectorIsThatOfAggregate3() {
+        assertThat(Multicall3Codec.AGGREGATE3_SELECTOR).isEqualTo("0x82ad56cb");
+    }
+
+    @Test
+    void encodesCallsAsAnArrayOfTuplesAllowingFailure() {
+        // totalSupply() and balanceOf(0x3333...): 4 and 36 bytes, so both need padding
+        String encoded = Multicall3Codec.encodeAggregate3(List.of(
+                new Multicall3Codec.Call(TARGET_A, Numeric.hexStringToByteArray("0x18160ddd")),
+                new Multicall3Codec.Call(TARGET_B, Numeric.hexStringToByteArray(
+                        "0x70a082310000000000000000000000003333333333333333333333333333333333333333"))));
+
+        assertThat(encoded).isEqualTo("0x82ad56cb" + String.join("",
+                word("20"),     // offset of the array
+                word("2"),      // number of calls
+                word("40"),     // offset of the first tuple, counted from here
+                word("e0"),     // offset of the second tuple
+                // (TARGET_A, true, 0x18160ddd)
+                word("1111111111111111111111111111111111111111"),
+                word("1"),
+                word("60"),
+                word("4"),
+                "18160ddd" + "00".repeat(28),
+                // (TARGET_B, true, balanceOf call data)
+                word("2222222222222222222222222222222222222222"),
+                word("1"),
+                word("60"),
+                word("24"),
+                "70a08231" + word("3333333333333333333333333333333333333333") + "00".repeat(28)));
+    }
+
+    @Test
+    void encodesNoCalls() {
+        assertThat(Multicall3Codec.encodeAggregate3(List.of())).isEqualTo("0x82ad56cb" + word("20") + word("0"));
+    }
+
+    @Test
+    void decodesSuccessAndReturnDataOfEveryCall() {
+        String returned = "0x" + String.join("",
+                word("20"),
+                word("2"),
+                word("40"),
+                word("c0"),
+                // (true, uint256 42)
+                word("1"),
+                word("40"),
+                word("20"),
+                word("2a"),
+                // (false, empty)
+                word("0"),
+                word("40"),
+                word("0"));
+
+        List<Multicall3Codec.Result> results = Multicall3Codec.decodeAggregate3(returned);
+
+        assertThat(results).hasSize(2);
+        assertThat(results.get(0).success()).isTrue();
+        assertThat(Numeric.toBigInt(results.get(0).returnData())).hasToString("42");
+        assertThat(results.get(1).success()).isFalse();
+        assertThat(results.get(1).returnData()).isEmpty();
+    }
+
+    @Test
+    void rejectsTruncatedResults() {
+        String truncated = "0x" + word("20") + word("1") + word("20");
+
+        assertThatThrownBy(() -> Multicall3Codec.decodeAggregate3(truncated))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static String word(String hex) {
+        return "0".repeat(64 - hex.length()) + hex;
+    }
+}
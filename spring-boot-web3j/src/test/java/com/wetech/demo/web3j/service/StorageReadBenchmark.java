@@ -0,0 +1,216 @@
+package com.wetech.demo.web3j.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.wetech.demo.web3j.rpc.Benchmarks;
+import com.wetech.demo.web3j.rpc.NodeStandIn;
+import com.wetech.demo.web3j.rpc.PooledHttpService;
+import com.wetech.demo.web3j.rpc.RpcCalls;
+import com.wetech.demo.web3j.rpc.RpcPriority;
+import com.wetech.demo.web3j.rpc.RpcWorkload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.Web3j;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link #ENTRIES} balances and {@link #ENTRIES} allowances read through {@link StorageSlotReader}
+ * as one batch of {@code eth_getStorageAt}, against its {@code eth_call} fallback: one Multicall3
+ * {@code aggregate3}, and a JSON-RPC batch of {@code eth_call} when no Multicall3 is deployed.
+ * The node takes {@link #CALL_SETUP_MICROS} to set up each {@code eth_call} and
+ * {@link #EXECUTION_MICROS} to run each contract call in it, so {@code aggregate3} pays the set-up
+ * once; storage lookups are free on both paths. The time is parked rather than spent, like a node
+ * on another machine, so it does not compete with the client for CPU. The storage path still runs
+ * one {@code balanceOf} or {@code allowance} per batch to check the layout.
+ */
+@Tag(Benchmarks.TAG)
+class StorageReadBenchmark {
+
+    private static final int ENTRIES = 200;
+    private static final long CALL_SETUP_MICROS = 300;
+    private static final long EXECUTION_MICROS = 20;
+    private static final String TOKEN = "0x1111111111111111111111111111111111111111";
+    private static final String MULTICALL = "0xcA11bde05977b3631167028862bE2a173976CA11";
+    private static final String BALANCE_OF = "70a08231";
+    private static final String ALLOWANCE = "dd62ed3e";
+    private static final BigInteger BLOCK = BigInteger.valueOf(1_000);
+
+    private final Map<BigInteger, String> storage = new HashMap<>();
+    private final Map<String, String> views = new HashMap<>();
+    private volatile boolean multicallDeployed;
+
+    @Test
+    void compareStorageReadsWithContractCalls() throws Exception {
+        Random random = new Random(1);
+        List<String> accounts = new ArrayList<>();
+        List<StorageSlotReader.Allowance> allowances = new ArrayList<>();
+        for (int i = 0; i < ENTRIES; i++) {
+            String owner = address(random);
+            String spender = address(random);
+            accounts.add(owner);
+            StorageSlotReader.Allowance entry = new StorageSlotReader.Allowance(owner, spender);
+            allowances.add(entry);
+            String balance = word(random);
+            String allowance = word(random);
+            storage.put(StorageSlotReader.balanceSlot(owner), balance);
+            storage.put(StorageSlotReader.allowanceSlot(entry), allowance);
+            views.put(BALANCE_OF + pad(owner), balance);
+            views.put(ALLOWANCE + pad(owner) + pad(spender), allowance);
+        }
+        List<String> expectedBalances = accounts.stream().map(account -> views.get(BALANCE_OF + pad(account)))
+                .toList();
+        List<String> expectedAllowances = allowances.stream()
+                .map(allowance -> views.get(ALLOWANCE + pad(allowance.owner()) + pad(allowance.spender())))
+                .toList();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (NodeStandIn node = new NodeStandIn(this::answer)) {
+            Web3j web3j = Web3j.build(new PooledHttpService(node.httpUrl(), new OkHttpClient()));
+            RpcCalls rpcCalls = new RpcCalls(Map.of(RpcWorkload.READ, executor), null, null);
+            try {
+                multicallDeployed = true;
+                StorageSlotReader storageReads = reader(web3j, rpcCalls, true);
+                StorageSlotReader aggregate3 = reader(web3j, rpcCalls, false);
+                compare("balances", expectedBalances,
+                        () -> storageReads.balances(TOKEN, accounts, BLOCK, RpcWorkload.READ, RpcPriority.INTERACTIVE),
+                        () -> aggregate3.balances(TOKEN, accounts, BLOCK, RpcWorkload.READ, RpcPriority.INTERACTIVE));
+                compare("allowances", expectedAllowances,
+                        () -> storageReads.allowances(TOKEN, allowances, BLOCK, RpcWorkload.READ,
+                                RpcPriority.INTERACTIVE),
+                        () -> aggregate3.allowances(TOKEN, allowances, BLOCK, RpcWorkload.READ,
+                                RpcPriority.INTERACTIVE));
+
+                multicallDeployed = false;
+                StorageSlotReader callBatch = reader(web3j, rpcCalls, false);
+                long[] nanos = Benchmarks.measure(20, 200, () -> read(expectedBalances,
+                        () -> callBatch.balances(TOKEN, accounts, BLOCK, RpcWorkload.READ, RpcPriority.INTERACTIVE)));
+                System.out.println(Benchmarks.summary("balances eth_call batch", nanos));
+            } finally {
+                web3j.shutdown();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void compare(String kind, List<String> expected,
+                                Supplier<List<CompletableFuture<String>>> storageReads,
+                                Supplier<List<CompletableFuture<String>>> calls) throws Exception {
+        long[] storageNanos = Benchmarks.measure(20, 200, () -> read(expected, storageReads));
+        long[] callNanos = Benchmarks.measure(20, 200, () -> read(expected, calls));
+        System.out.println(Benchmarks.summary(kind + " storage", storageNanos));
+        System.out.println(Benchmarks.summary(kind + " aggregate3", callNanos));
+    }
+
+    private static List<String> read(List<String> expected, Supplier<List<CompletableFuture<String>>> reads)
+            throws Exception {
+        List<String> values = new ArrayList<>();
+        for (CompletableFuture<String> value : reads.get()) {
+            values.add(value.get(10, TimeUnit.SECONDS));
+        }
+        assertThat(values).isEqualTo(expected);
+        return values;
+    }
+
+    private StorageSlotReader reader(Web3j web3j, RpcCalls rpcCalls, boolean storageReads) {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MulticallBatcher multicall = new MulticallBatcher(web3j, rpcCalls, registry, true, MULTICALL, 2, ENTRIES,
+                600_000);
+        return new StorageSlotReader(web3j, rpcCalls, multicall, registry, storageReads, 600_000);
+    }
+
+    private String answer(JsonNode request) {
+        JsonNode params = request.get("params");
+        return switch (request.get("method").asText()) {
+            case "eth_getStorageAt" -> quoted(storage.getOrDefault(Numeric.toBigInt(params.get(1).asText()),
+                    Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ZERO, 64)));
+            case "eth_getCode" -> quoted(multicallDeployed ? "0x6080" : "0x");
+            case "eth_call" -> {
+                JsonNode call = params.get(0);
+                JsonNode input = call.has("data") ? call.get("data") : call.get("input");
+                String data = Numeric.cleanHexPrefix(input.asText());
+                if (MULTICALL.equalsIgnoreCase(call.get("to").asText())) {
+                    yield quoted(aggregate3(data));
+                }
+                park(CALL_SETUP_MICROS + EXECUTION_MICROS);
+                yield quoted(view(data));
+            }
+            default -> throw new NodeStandIn.RpcError(-32601, "Method not found");
+        };
+    }
+
+    /**
+     * Answer each call of an {@code aggregate3} and encode the {@code (bool,bytes)[]} results.
+     */
+    private String aggregate3(String data) {
+        byte[] input = Numeric.hexStringToByteArray(data.substring(8));
+        int array = word(input, 0);
+        int n = word(input, array);
+        int heads = array + 32;
+        park(CALL_SETUP_MICROS + n * EXECUTION_MICROS);
+        StringBuilder results = new StringBuilder(pad(32)).append(pad(n));
+        StringBuilder tuples = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            int tuple = heads + word(input, heads + i * 32);
+            int bytes = tuple + word(input, tuple + 64);
+            int length = word(input, bytes);
+            byte[] callData = new byte[length];
+            System.arraycopy(input, bytes + 32, callData, 0, length);
+            results.append(pad(n * 32 + i * 128));
+            tuples.append(pad(1)).append(pad(64)).append(pad(32))
+                    .append(Numeric.cleanHexPrefix(view(Numeric.toHexStringNoPrefix(callData))));
+        }
+        return "0x" + results + tuples;
+    }
+
+    private String view(String data) {
+        return views.getOrDefault(data, Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ZERO, 64));
+    }
+
+    private static void park(long micros) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+
+    private static int word(byte[] data, int position) {
+        return new BigInteger(1, Arrays.copyOfRange(data, position, position + 32)).intValueExact();
+    }
+
+    private static String pad(String address) {
+        return "0".repeat(24) + Numeric.cleanHexPrefix(address);
+    }
+
+    private static String pad(int value) {
+        return Numeric.toHexStringNoPrefixZeroPadded(BigInteger.valueOf(value), 64);
+    }
+
+    private static String address(Random random) {
+        byte[] address = new byte[20];
+        random.nextBytes(address);
+        return Numeric.toHexString(address);
+    }
+
+    private static String word(Random random) {
+        return Numeric.toHexStringWithPrefixZeroPadded(new BigInteger(96, random), 64);
+    }
+
+    private static String quoted(String hex) {
+        return "\"" + hex + "\"";
+    }
+}
@@ -0,0 +1,81 @@
+package com.wetech.demo.web3j.service;
+
+import org.junit.jupiter.api.Test;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StorageSlotReaderTest {
+
+    private static final String ZERO = "0x" + "0".repeat(64);
+    private static final String ONE_TOKEN = Numeric.toHexStringWithPrefixZeroPadded(BigInteger.TEN.pow(18), 64);
+
+    @Test
+    void balanceSlotIsTheMappingSlotOfTheAccountAtSlotZero() {
+        // keccak256(pad(account) ++ pad(0))
+        assertThat(StorageSlotReader.balanceSlot("0x0000000000000000000000000000000000000000"))
+                .isEqualTo(Numeric.toBigInt("0xad3228b676f7d3cd4284a5443f17f1962b36e491b30a40b2405849e597ba5fb5"));
+        assertThat(StorageSlotReader.balanceSlot("0x1111111111111111111111111111111111111111"))
+                .isEqualTo(Numeric.toBigInt("0xf043c50fe795c69f30b8ff78b84032dc53a9d87ca283ae10a1dacfbb648e83ef"));
+    }
+
+    @Test
+    void balanceSlotIgnoresAddressCase() {
+        assertThat(StorageSlotReader.balanceSlot("0xABCDEFabcdef0000000000000000000000000001"))
+                .isEqualTo(StorageSlotReader.balanceSlot("0xabcdefabcdef0000000000000000000000000001"));
+    }
+
+    @Test
+    void allowanceSlotNestsTheSpenderUnderTheOwnerAtSlotOne() {
+        // keccak256(pad(spender) ++ keccak256(pad(owner) ++ pad(1)))
+        assertThat(StorageSlotReader.allowanceSlot(new StorageSlotReader.Allowance(
+                "0x0000000000000000000000000000000000000000", "0x0000000000000000000000000000000000000000")))
+                .isEqualTo(Numeric.toBigInt("0xe5d06582d467054dda5404b9e1ec93f72b608a4970ba970773776c69ca5664f7"));
+        assertThat(StorageSlotReader.allowanceSlot(new StorageSlotReader.Allowance(
+                "0x1111111111111111111111111111111111111111", "0x2222222222222222222222222222222222222222")))
+                .isEqualTo(Numeric.toBigInt("0xc1c5f965d29f0d4614dc5d7a10929cd88a089f67386275dfd83b6bd3e280c8cd"));
+    }
+
+    @Test
+    void allowanceSlotDependsOnWhichSideEachAddressIsOn() {
+        assertThat(StorageSlotReader.allowanceSlot(new StorageSlotReader.Allowance(
+                "0x2222222222222222222222222222222222222222", "0x1111111111111111111111111111111111111111")))
+                .isNotEqualTo(StorageSlotReader.allowanceSlot(new StorageSlotReader.Allowance(
+                        "0x1111111111111111111111111111111111111111", "0x2222222222222222222222222222222222222222")));
+    }
+
+    @Test
+    void allowanceSlotIgnoresAddressCase() {
+        assertThat(StorageSlotReader.allowanceSlot(new StorageSlotReader.Allowance(
+                "0xABCDEFabcdef0000000000000000000000000001", "0xFEDCBAfedcba0000000000000000000000000002")))
+                .isEqualTo(StorageSlotReader.allowanceSlot(new StorageSlotReader.Allowance(
+                        "0xabcdefabcdef0000000000000000000000000001", "0xfedcbafedcba0000000000000000000000000002")));
+    }
+
+    @Test
+    void nonzeroBalanceInTheSlotConfirmsTheLayout() {
+        assertThat(StorageSlotReader.checkLayout(ONE_TOKEN, ONE_TOKEN)).isTrue();
+    }
+
+    @Test
+    void balanceOfDisagreeingWithTheSlotRejectsTheLayout() {
+        // e.g. Solmate, which keeps balances at slot 3 and leaves the slot read here empty
+        assertThat(StorageSlotReader.checkLayout(ZERO, ONE_TOKEN)).isFalse();
+        assertThat(StorageSlotReader.checkLayout(ONE_TOKEN, ZERO)).isFalse();
+    }
+
+    @Test
+    void zeroOnBothSidesCannotTell() {
+        assertThat(StorageSlotReader.checkLayout(ZERO, ZERO)).isNull();
+    }
+
+    @Test
+    void missingValuesCannotTell() {
+        assertThat(StorageSlotReader.checkLayout(null, ONE_TOKEN)).isNull();
+        assertThat(StorageSlotReader.checkLayout(ONE_TOKEN, null)).isNull();
+        // No balanceOf at all: the call returns no data
+        assertThat(StorageSlotReader.checkLayout(ONE_TOKEN, "0x")).isNull();
+    }
+}